@@ -0,0 +1,65 @@
+package bench;
+
+import java.awt.Color;
+import java.util.Random;
+
+import core.App;
+import core.entity.Camera;
+import core.entity.Entity;
+import core.entity.EntityStore;
+import core.entity.Light;
+import core.entity.LightType;
+import core.physic.SpatialHash;
+import demo.DemoScene;
+
+/**
+ * Seeded scene builders shared by the benchmarks.
+ */
+public class BenchScenes {
+
+    private static App app;
+
+    /**
+     * Create (once) the application, with configuration overrides given as
+     * <code>key=value</code> strings.
+     */
+    public static App app(String... overrides) {
+        if (app == null) {
+            app = new App();
+        }
+        app.getConfiguration().parseArgs(overrides).extractConfigValues();
+        return app;
+    }
+
+    /**
+     * Build a scene with <code>count</code> small dynamic entities spread over a
+     * world sized to keep a constant density, and a camera on its center.
+     */
+    public static DemoScene create(int count, boolean store, boolean lights) {
+        DemoScene scene = new DemoScene();
+        if (store) {
+            scene.setEntityStore(new EntityStore(count + 16));
+        }
+        scene.setSpatialIndex(new SpatialHash(32, 4096));
+        int side = (int) Math.max(320, Math.sqrt(count) * 32);
+        scene.getWorld().setSize(side, side);
+        scene.addEntity(scene.getWorld());
+        Random rand = new Random(1234);
+        for (int i = 0; i < count; i++) {
+            scene.addEntity(new Entity("entity_%d".formatted(i))
+                    .setPosition(rand.nextDouble(side), rand.nextDouble(side)).setSize(8, 8)
+                    .setEdgeColor(Color.ORANGE).setFillColor(Color.ORANGE.darker())
+                    .setVelocity(-0.2 + rand.nextDouble(0.4), -0.2 + rand.nextDouble(0.4)));
+        }
+        if (lights) {
+            for (int i = 0; i < 16; i++) {
+                scene.addLight(new Light("light_%d".formatted(i)).setLightType(LightType.values()[i % 4])
+                        .setIntensity(0.3).setRadius(60).setDirection(-Math.PI / 4.0)
+                        .setPosition(side / 2.0 - 160 + rand.nextDouble(320), side / 2.0 - 100 + rand.nextDouble(200))
+                        .setSize(50, 100).setFillColor(new Color(rand.nextInt(0xFFFFFF))));
+            }
+        }
+        scene.setActiveCamera(new Camera("cam").setSize(320, 200).setPosition(side / 2.0 - 160, side / 2.0 - 100));
+        return scene;
+    }
+}
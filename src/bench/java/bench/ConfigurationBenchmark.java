@@ -0,0 +1,56 @@
+package bench;
+
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.utils.Configuration;
+
+/**
+ * Configuration.get() for a scalar and a dimension value, by name and by typed key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConfigurationBenchmark {
+
+    private Configuration config;
+
+    @Setup
+    public void setup() {
+        config = BenchScenes.app().getConfiguration();
+    }
+
+    @Benchmark
+    public Integer getDebug() {
+        return config.get("app.debug", 0);
+    }
+
+    @Benchmark
+    public Dimension getBufferSize() {
+        return config.get("app.gfx.rendering.buffer.size", new Dimension(320, 200));
+    }
+
+    @Benchmark
+    public Integer getDebugKey() {
+        return config.get(Configuration.DEBUG);
+    }
+
+    @Benchmark
+    public Dimension getBufferSizeKey() {
+        return config.get(Configuration.BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.entity.Camera;
+import core.entity.ParticleEmitter;
+import core.gfx.Renderer;
+import demo.DemoScene;
+
+/**
+ * One ParticleEmitter kept at a steady population of <code>particles</code>:
+ * integration of one step, and rendering into the off-screen buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParticleBenchmark {
+
+    @Param({"10000", "200000"})
+    public int particles;
+
+    private DemoScene scene;
+    private ParticleEmitter emitter;
+    private Renderer renderer;
+
+    @Setup
+    public void setup() {
+        var app = BenchScenes.app();
+        scene = new DemoScene();
+        scene.getWorld().setSize(320, 200);
+        scene.addEntity(scene.getWorld());
+        // a population of particles/s * lifetime, renewed at the same rate.
+        emitter = new ParticleEmitter("particles", particles * 2).setRate(particles).setLifetime(1000)
+                .setSpeed(0.1).setDirection(-Math.PI / 2, Math.PI).setParticleColor(Color.CYAN);
+        emitter.setPosition(0, 0).setSize(320, 200);
+        scene.addEmitter(emitter);
+        scene.setActiveCamera(new Camera("cam").setSize(320, 200));
+        for (int i = 0; i < 60; i++) {
+            emitter.integrate(scene.getWorld(), 16.67);
+        }
+        renderer = new Renderer(app);
+    }
+
+    @Benchmark
+    public ParticleEmitter integrate() {
+        emitter.integrate(scene.getWorld(), 16.67);
+        return emitter;
+    }
+
+    @Benchmark
+    public Renderer draw() {
+        renderer.draw(scene, 1.0);
+        return renderer;
+    }
+}
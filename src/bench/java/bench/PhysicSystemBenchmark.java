@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.physic.PhysicSystem;
+import core.scene.Scene;
+
+/**
+ * One PhysicSystem.update() step (integration, spatial index, collisions).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PhysicSystemBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    @Param({"false", "true"})
+    public boolean store;
+
+    @Param({"false", "true"})
+    public boolean collision;
+
+    private Scene scene;
+    private PhysicSystem physicSystem;
+
+    @Setup
+    public void setup() {
+        physicSystem = new PhysicSystem(BenchScenes.app("app.physic.collision=" + collision));
+        scene = BenchScenes.create(entities, store, false);
+        physicSystem.update(scene, 16.67);
+    }
+
+    @Benchmark
+    public Scene update() {
+        physicSystem.update(scene, 16.67);
+        return scene;
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.gfx.Renderer;
+import core.physic.PhysicSystem;
+import core.scene.Scene;
+
+/**
+ * Renderer.draw() into the off-screen buffer (no window), with and without lights,
+ * through Java2D or the software rasterizer (<code>app.gfx.raster</code>).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RendererBenchmark {
+
+    @Param({"1000", "10000"})
+    public int entities;
+
+    @Param({"false", "true"})
+    public boolean lights;
+
+    @Param({"false", "true"})
+    public boolean raster;
+
+    private Scene scene;
+    private Renderer renderer;
+
+    @Setup
+    public void setup() {
+        var app = BenchScenes.app("app.gfx.raster=" + raster);
+        scene = BenchScenes.create(entities, false, lights);
+        // build the spatial index used for culling.
+        new PhysicSystem(app).update(scene, 16.67);
+        renderer = new Renderer(app);
+    }
+
+    @Benchmark
+    public Renderer draw() {
+        renderer.draw(scene, 1.0);
+        return renderer;
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.entity.Entity;
+import core.scene.Scene;
+
+/**
+ * AbstractScene.getEntity(name) lookups, for the first and the last entity.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SceneLookupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int entities;
+
+    private Scene scene;
+    private String first;
+    private String last;
+
+    @Setup
+    public void setup() {
+        BenchScenes.app();
+        scene = BenchScenes.create(entities, false, false);
+        first = "entity_0";
+        last = "entity_%d".formatted(entities - 1);
+    }
+
+    @Benchmark
+    public Entity getFirst() {
+        return scene.getEntity(first);
+    }
+
+    @Benchmark
+    public Entity getLast() {
+        return scene.getEntity(last);
+    }
+}
@@ -0,0 +1,141 @@
+package bench;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.entity.Entity;
+import core.physic.Material;
+import core.physic.PhysicType;
+import core.scene.SceneSerializer;
+import demo.DemoScene;
+
+/**
+ * Scene snapshot and in-place restore with the {@link SceneSerializer},
+ * compared to a naive Java serialization of the same entity state. The
+ * restores alternate between two snapshots taken one step apart, so that
+ * every entity changes.
+ * <p>
+ * At 100k entities (about 100 bytes per record, 10 MB per snapshot) a
+ * snapshot takes 7 to 9 ms and a restore 8 to 10 ms: this misses the target
+ * of a few milliseconds. The names account for about a fifth of it, the rest
+ * is the per-field gathering over the scattered entity objects, which only a
+ * columnar layout per archetype would remove.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SceneSerializerBenchmark {
+
+    record EntityState(long id, String name, double x, double y, double px, double py, double vx, double vy,
+            double w, double h, PhysicType physicType, String material, double friction, double elasticity,
+            double density, Color edgeColor, Color fillColor, boolean active, HashSet<String> tags)
+            implements Serializable {
+    }
+
+    @Param({"10000", "100000"})
+    public int count;
+
+    private DemoScene scene;
+    private final SceneSerializer serializer = new SceneSerializer();
+    private ByteBuffer buffer, first, second;
+    private boolean odd;
+
+    @Setup
+    public void setup() {
+        scene = BenchScenes.create(count, true, true);
+        first = serializer.write(scene, null);
+        for (Entity e : scene.getEntities()) {
+            e.savePreviousPosition();
+            e.setPosition(e.getX() + e.getVelocity().getX() * 16, e.getY() + e.getVelocity().getY() * 16);
+        }
+        second = serializer.write(scene, null);
+        buffer = serializer.write(scene, null);
+    }
+
+    @Benchmark
+    public ByteBuffer snapshot() {
+        buffer = serializer.write(scene, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public DemoScene restore() {
+        odd = !odd;
+        serializer.restore(scene, odd ? first : second);
+        return scene;
+    }
+
+    @Benchmark
+    public byte[] javaSerialization() throws IOException {
+        List<EntityState> states = new ArrayList<>(scene.getEntities().size());
+        for (Entity e : scene.getEntities()) {
+            Material m = e.getMaterial();
+            states.add(new EntityState(e.getId(), e.getName(), e.getX(), e.getY(),
+                    e.getInterpolatedX(0), e.getInterpolatedY(0), e.getVelocity().getX(), e.getVelocity().getY(),
+                    e.getWidth(), e.getHeight(), e.getPhysicType(), m.name(), m.friction(), m.elasticity(),
+                    m.density(), e.getEdgeColor(), e.getFillColor(), e.isActive(), new HashSet<>(e.getTags())));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(states);
+        }
+        return bytes.toByteArray();
+    }
+
+    @State(Scope.Thread)
+    public static class JavaSnapshot {
+        byte[] bytes;
+
+        @Setup
+        public void setup(SceneSerializerBenchmark bench) throws IOException {
+            bytes = bench.javaSerialization();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public DemoScene javaDeserialization(JavaSnapshot snapshot) throws IOException, ClassNotFoundException {
+        List<EntityState> states;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(snapshot.bytes))) {
+            states = (List<EntityState>) in.readObject();
+        }
+        List<Entity> entities = scene.getEntities();
+        for (int i = 0; i < states.size(); i++) {
+            EntityState s = states.get(i);
+            Entity e = entities.get(i);
+            e.setPosition(s.px(), s.py());
+            e.savePreviousPosition();
+            e.setPosition(s.x(), s.y());
+            e.setVelocity(s.vx(), s.vy());
+            e.setSize(s.w(), s.h());
+            e.setEdgeColor(s.edgeColor());
+            e.setFillColor(s.fillColor());
+        }
+        return scene;
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.entity.Entity;
+import core.script.ScriptSystem;
+import demo.DemoScene;
+
+/**
+ * One ScriptSystem step with <code>count</code> scripted entities, each
+ * script waiting for the next step (<code>tick</code>: all resumed at each
+ * step) or on a 1 s timer (<code>timer</code>: about 1/60 of them resumed at
+ * each step).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScriptBenchmark {
+
+    @Param({"1000", "10000"})
+    public int count;
+
+    @Param({"tick", "timer"})
+    public String wait;
+
+    private DemoScene scene;
+    private ScriptSystem scripts;
+
+    @Setup
+    public void setup() {
+        scene = BenchScenes.create(count, false, false);
+        scripts = new ScriptSystem();
+        boolean timer = "timer".equals(wait);
+        int i = 0;
+        for (Entity e : scene.getEntities()) {
+            double phase = 1000.0 * (i++ % 60) / 60;
+            scripts.start(e, ctx -> {
+                if (timer) {
+                    ctx.waitFor(phase);
+                }
+                while (true) {
+                    e.setVelocity(-e.getVelocity().getX(), e.getVelocity().getY());
+                    if (timer) {
+                        ctx.waitFor(1000);
+                    } else {
+                        ctx.nextTick();
+                    }
+                }
+            });
+        }
+        for (int t = 0; t < 120; t++) {
+            scripts.update(scene, 16.67);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scripts.dispose();
+    }
+
+    @Benchmark
+    public ScriptSystem update() {
+        scripts.update(scene, 16.67);
+        return scripts;
+    }
+}
@@ -1,18 +1,29 @@
 package core;
 
 import java.awt.event.KeyListener;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
 
+import core.entity.EntityStore;
+import core.gfx.RenderPipeline;
 import core.gfx.Renderer;
 import core.io.InputHandler;
+import core.io.InputTrace;
 import core.physic.PhysicSystem;
+import core.physic.SpatialHash;
 import core.scene.Scene;
+import core.scene.SceneSerializer;
+import core.scene.SceneSnapshot;
+import core.script.ScriptSystem;
+import core.utils.AsyncLogger;
 import core.utils.Configuration;
+import core.utils.Profiler;
+import core.utils.RandomService;
 import demo.DemoScene;
 
 public class App {
@@ -25,12 +36,22 @@ public class App {
         DEBUG, INFO, WARN, ERROR
     }
 
+    public enum LoopMode {
+        VARIABLE, FIXED, PIPELINED;
+    }
+
     public static final ResourceBundle messages = ResourceBundle.getBundle("i18n/messages");
     public static Configuration config;
-    private static final long FPS = 60;
+    private static final long SPIN_THRESHOLD_NS = 2_000_000L;
 
     public int debug = 0;
     public RunningMode mode = RunningMode.PROD;
+    public LoopMode loopMode = LoopMode.VARIABLE;
+    private volatile int fps = 60;
+    private int tickRate = 60;
+    private int maxSteps = 5;
+    // configuration version of the last applied hot reload.
+    private long configVersion;
 
     private boolean exit = false;
     public boolean pause = false;
@@ -41,6 +62,8 @@ public class App {
 
     private Renderer renderer;
     private PhysicSystem physicSystem;
+    private ScriptSystem scriptSystem;
+    private Profiler profiler;
     private InputHandler inputHandler;
 
     public App() {
@@ -58,13 +81,30 @@ public class App {
     public void run(String[] args) {
 
         config.parseArgs(args).extractConfigValues();
+        fps = config.get(Configuration.FPS);
+        tickRate = config.get(Configuration.TICK_RATE);
+        maxSteps = config.get(Configuration.MAX_STEPS);
+        RandomService.setSeed(config.get(Configuration.RANDOM_SEED));
+        configVersion = config.getVersion();
+        if (config.get(Configuration.CONFIG_RELOAD)) {
+            config.watch();
+        }
+
+        if (mode == RunningMode.TEST && System.getProperty("java.awt.headless") == null) {
+            // render into the off-screen buffer only.
+            System.setProperty("java.awt.headless", "true");
+        }
 
         inputHandler = new InputHandler(this);
+        profiler = new Profiler(config.get(Configuration.PROFILER));
 
         renderer = new Renderer(this);
-        renderer.prepareWindow();
+        if (mode != RunningMode.TEST) {
+            renderer.prepareWindow();
+        }
 
         physicSystem = new PhysicSystem(this);
+        scriptSystem = new ScriptSystem();
 
         log(App.class, LogLevel.INFO, "RUN !");
         loop();
@@ -72,39 +112,293 @@ public class App {
     }
 
     private void loop() {
-        long startTime = 0, endTime = 0, elapsed = 0;
+        if (config.get(Configuration.ENTITY_STORE)) {
+            currentScene.setEntityStore(new EntityStore(config.get(Configuration.ENTITY_STORE_CAPACITY)));
+        }
+        currentScene.setSpatialIndex(new SpatialHash(config.get(Configuration.INDEX_CELL_SIZE),
+                config.get(Configuration.INDEX_BUCKETS)));
         currentScene.initialize(this);
         currentScene.create(this);
+        log(App.class, LogLevel.INFO, "Loop mode %s (fps:%d, tick rate:%d, max steps:%d)", loopMode, fps, tickRate,
+                maxSteps);
+        if (mode == RunningMode.TEST && loopMode != LoopMode.PIPELINED) {
+            loopHeadless();
+        } else {
+            switch (loopMode) {
+                case FIXED -> loopFixed();
+                case PIPELINED -> loopPipelined();
+                default -> loopVariable();
+            }
+        }
+        if (mode == RunningMode.TEST) {
+            logStateChecksum();
+        }
+    }
+
+    /**
+     * Log a checksum of the scene state, to compare the end state of two runs
+     * replaying the same input trace.
+     */
+    private void logStateChecksum() {
+        ByteBuffer state = new SceneSerializer().write(currentScene, null);
+        CRC32 crc = new CRC32();
+        crc.update(state);
+        log(App.class, LogLevel.INFO, "Scene state checksum %08x (%d bytes, %d ticks)", crc.getValue(),
+                state.limit(), inputHandler.getTick());
+    }
+
+    /**
+     * Headless benchmark loop: run <code>app.test.ticks</code> fixed steps as
+     * fast as possible, rendering each one into the off-screen buffer, and
+     * optionally dumping frames every <code>app.test.dump.every</code> ticks.
+     */
+    private void loopHeadless() {
+        final int ticks = config.get(Configuration.TEST_TICKS);
+        final int dumpEvery = config.get(Configuration.TEST_DUMP_EVERY);
+        final String dumpFormat = config.get(Configuration.TEST_DUMP_FORMAT);
+        final Path dumpPath = Path.of(config.get(Configuration.TEST_DUMP_PATH));
+        final double stepMs = InputTrace.stepMs(tickRate);
+        long updateTime = 0, renderTime = 0;
+
+        physicSystem.saveState(currentScene);
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks && !exit; tick++) {
+            long t0 = System.nanoTime();
+            update(stepMs);
+            long t1 = System.nanoTime();
+            render(1.0);
+            long t2 = System.nanoTime();
+            updateTime += t1 - t0;
+            renderTime += t2 - t1;
+            if (dumpEvery > 0 && tick % dumpEvery == 0) {
+                renderer.dumpFrame(dumpPath, tick, dumpFormat);
+            }
+        }
+        long total = System.nanoTime() - start;
+        log(App.class, LogLevel.INFO, "%d ticks in %.1f ms: %.1f ticks/s, update avg %.3f ms, render avg %.3f ms",
+                ticks, total / 1e6, ticks / (total / 1e9), updateTime / 1e6 / ticks, renderTime / 1e6 / ticks);
+    }
+
+    private void loopVariable() {
+        long startTime = 0, endTime = 0, elapsed = 0;
         endTime = System.currentTimeMillis();
         do {
             startTime = endTime;
-            if (!pause) {
-                update(elapsed);
-            }
-            render();
+            update(elapsed);
+            render(1.0);
             try {
-                Thread.sleep((1000 / (FPS)) - elapsed > 0 ? (1000 / (FPS)) - elapsed : 1);
+                Thread.sleep((1000 / (fps)) - elapsed > 0 ? (1000 / (fps)) - elapsed : 1);
             } catch (Exception e) {
                 // something goes wrong in the matrix
             }
             endTime = System.currentTimeMillis();
             elapsed = endTime - startTime;
 
-        } while (!exit && mode == RunningMode.PROD);
+        } while (!exit);
+    }
+
+    /**
+     * Fixed timestep loop: the simulation always advances by the same step
+     * (1/tickRate s), whatever the frame rate is. Remaining time in the
+     * accumulator is passed to the renderer as an interpolation factor between
+     * the previous and the current state of the entities.
+     */
+    private void loopFixed() {
+        final long stepNs = 1_000_000_000L / tickRate;
+        final double stepMs = InputTrace.stepMs(tickRate);
+        long accumulator = 0;
+        physicSystem.saveState(currentScene);
+        long previous = System.nanoTime();
+        do {
+            long frameStart = System.nanoTime();
+            // clamp the frame time to avoid the spiral of death after a long hitch.
+            accumulator += Math.min(frameStart - previous, stepNs * maxSteps);
+            previous = frameStart;
+
+            int steps = 0;
+            while (accumulator >= stepNs && steps < maxSteps) {
+                update(stepMs);
+                accumulator -= stepNs;
+                steps++;
+            }
+            if (accumulator >= stepNs) {
+                // too late to catch up: drop the remaining steps.
+                accumulator %= stepNs;
+            }
+
+            render(pause ? 1.0 : accumulator / (double) stepNs);
+            // fps may be hot reloaded.
+            waitUntil(frameStart + 1_000_000_000L / fps);
+
+        } while (!exit);
+    }
+
+    /**
+     * Pipelined loop: the simulation runs at the fixed tick rate on this thread
+     * and publishes a snapshot of the scene after each step into a
+     * {@link RenderPipeline} of <code>app.loop.pipeline.depth</code> snapshots,
+     * while the render thread draws the latest one. The simulation thus goes on
+     * while the renderer waits for <code>BufferStrategy.show()</code>.
+     * <p>
+     * In TEST mode, <code>app.test.ticks</code> steps are run as fast as
+     * possible in lockstep with the render thread, which draws every step and
+     * dumps the frames like the headless loop.
+     */
+    private void loopPipelined() {
+        final boolean headless = mode == RunningMode.TEST;
+        final int ticks = headless ? config.get(Configuration.TEST_TICKS) : Integer.MAX_VALUE;
+        final long stepNs = 1_000_000_000L / tickRate;
+        final double stepMs = InputTrace.stepMs(tickRate);
+        final RenderPipeline pipeline = new RenderPipeline(config.get(Configuration.PIPELINE_DEPTH),
+                config.get(Configuration.BUFFER_SIZE), headless);
+        final long[] frames = new long[1];
+
+        physicSystem.saveState(currentScene);
+        pipeline.publish(currentScene, System.nanoTime());
+        Thread renderThread = new Thread(() -> frames[0] = renderLoop(pipeline, stepNs, headless), "render");
+        renderThread.setDaemon(true);
+        renderThread.start();
+
+        long start = System.nanoTime();
+        long next = start;
+        int tick = 0;
+        while (!exit && tick < ticks) {
+            update(stepMs);
+            pipeline.publish(currentScene, System.nanoTime());
+            tick++;
+            if (!headless) {
+                next += stepNs;
+                long now = System.nanoTime();
+                if (now - next > stepNs * maxSteps) {
+                    // too late to catch up: drop the remaining steps.
+                    next = now;
+                }
+                waitUntil(next);
+            }
+        }
+        pipeline.close();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long total = System.nanoTime() - start;
+        log(App.class, LogLevel.INFO,
+                "%d ticks, %d frames in %.1f ms: %.1f frames/s (pipeline depth:%d, skipped captures:%d)",
+                tick, frames[0], total / 1e6, frames[0] / (total / 1e9), pipeline.getDepth(), pipeline.getSkipped());
+    }
+
+    /**
+     * Render thread of the pipelined loop: draw the latest snapshot at the
+     * <code>fps</code> rate, interpolated according to the time elapsed since
+     * its capture.
+     *
+     * @return the number of rendered frames.
+     */
+    private long renderLoop(RenderPipeline pipeline, long stepNs, boolean headless) {
+        final int dumpEvery = config.get(Configuration.TEST_DUMP_EVERY);
+        final String dumpFormat = config.get(Configuration.TEST_DUMP_FORMAT);
+        final Path dumpPath = Path.of(config.get(Configuration.TEST_DUMP_PATH));
+        long frames = 0;
+        long last = -1;
+        // headless, the steps published before the close are still drawn.
+        while (!pipeline.isClosed() || headless && pipeline.hasPending()) {
+            long frameStart = System.nanoTime();
+            SceneSnapshot snapshot = pipeline.acquire();
+            if (headless && pipeline.getCurrent() == last) {
+                // nothing new to draw.
+                LockSupport.parkNanos(100_000L);
+                continue;
+            }
+            last = pipeline.getCurrent();
+            // headless, each step is drawn as is, like the headless loop does.
+            double alpha = headless ? 1.0 : Math.min(1.0, (frameStart - snapshot.getTime()) / (double) stepNs);
+            renderer.draw(snapshot, pause ? 1.0 : alpha);
+            frames++;
+            // the snapshot n is the state after n steps, dumped as the tick n - 1 of the headless loop.
+            if (headless && dumpEvery > 0 && last > 0 && (last - 1) % dumpEvery == 0) {
+                renderer.dumpFrame(dumpPath, (int) (last - 1), dumpFormat);
+            }
+            if (!headless) {
+                waitUntil(frameStart + 1_000_000_000L / fps);
+            }
+        }
+        return frames;
     }
 
-    private void update(long elapsed) {
+    /**
+     * Sleep the biggest part of the remaining frame time, then spin on the
+     * last {@link #SPIN_THRESHOLD_NS} to get a sub-millisecond accurate frame pacing.
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_THRESHOLD_NS) {
+            LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NS);
+        }
+        while (System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
 
+    /**
+     * One simulation step: apply the input events of the tick, then, unless
+     * paused, update the scene.
+     */
+    private void update(double elapsed) {
+        long t = profiler.start();
+        applyConfigChanges();
+        elapsed = inputHandler.update(elapsed);
+        if (pause) {
+            profiler.end(Profiler.Span.INPUT, t);
+            return;
+        }
         currentScene.input(this);
+        profiler.end(Profiler.Span.INPUT, t);
+        t = profiler.start();
         physicSystem.update(currentScene, elapsed);
+        profiler.end(Profiler.Span.PHYSIC, t);
+        t = profiler.start();
+        scriptSystem.update(currentScene, elapsed);
+        profiler.end(Profiler.Span.SCRIPT, t);
+    }
+
+    /**
+     * Apply the hot reloaded configuration values on the loop thread, between
+     * two ticks.
+     */
+    private void applyConfigChanges() {
+        long version = config.getVersion();
+        if (version == configVersion) {
+            return;
+        }
+        if (config.hasChanged(Configuration.DEBUG, configVersion)) {
+            debug = config.get(Configuration.DEBUG);
+        }
+        if (config.hasChanged(Configuration.LOG_LEVEL, configVersion)) {
+            AsyncLogger.get().setLevel(config.get(Configuration.LOG_LEVEL));
+        }
+        if (config.hasChanged(Configuration.FPS, configVersion)) {
+            fps = Math.max(1, config.get(Configuration.FPS));
+        }
+        configVersion = version;
+        log(App.class, LogLevel.INFO, "Configuration reloaded (debug:%d, fps:%d)", debug, fps);
     }
 
-    private void render() {
-        renderer.draw(currentScene);
+    private void render(double alpha) {
+        renderer.draw(currentScene, alpha);
     }
 
     private void dispose() {
+        config.dispose();
+        inputHandler.dispose();
+        scriptSystem.dispose();
+        physicSystem.dispose();
         renderer.dispose();
+        String export = config.get(Configuration.PROFILER_EXPORT);
+        if (!export.isBlank()) {
+            profiler.export(Path.of(export));
+        }
+        AsyncLogger.get().flush();
     }
 
     public static void main(String[] args) {
@@ -120,17 +414,42 @@ public class App {
         return time;
     }
 
+    /**
+     * Log a message through the {@link AsyncLogger}: messages under the
+     * <code>app.log.level</code> are ignored before any formatting, the others
+     * are formatted and printed by the logger thread. The fixed arity variants
+     * avoid the varargs array allocation.
+     */
+    public static void log(Class<?> clazz, LogLevel ll, String message) {
+        AsyncLogger.get().log(clazz, ll, message, 0, null, null, null, null);
+    }
+
+    public static void log(Class<?> clazz, LogLevel ll, String message, Object a0) {
+        AsyncLogger.get().log(clazz, ll, message, 1, a0, null, null, null);
+    }
+
+    public static void log(Class<?> clazz, LogLevel ll, String message, Object a0, Object a1) {
+        AsyncLogger.get().log(clazz, ll, message, 2, a0, a1, null, null);
+    }
+
+    public static void log(Class<?> clazz, LogLevel ll, String message, Object a0, Object a1, Object a2) {
+        AsyncLogger.get().log(clazz, ll, message, 3, a0, a1, a2, null);
+    }
+
     public static void log(Class<?> clazz, LogLevel ll, String message, Object... args) {
-        String timestamp = ZonedDateTime.now(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_ZONED_DATE_TIME);
-        String formattedMsg = args != null && args.length > 0 ? String.format(message, args) : message;
-        String output = String.format("%s;%s;%s;%s", timestamp, ll, clazz.getName(), formattedMsg);
-        if (ll == LogLevel.ERROR) {
-            System.err.println(output);
-        } else {
-            System.out.println(output);
+        if (AsyncLogger.get().isEnabled(ll)) {
+            AsyncLogger.get().log(clazz, ll, message, args != null ? args.length : 0, null, null, null, args);
         }
     }
 
+    /**
+     * @return true if the messages of this level are logged, to guard the
+     * calls whose arguments are costly to compute.
+     */
+    public static boolean isLogEnabled(LogLevel ll) {
+        return AsyncLogger.get().isEnabled(ll);
+    }
+
     public int getDebug() {
         return debug;
     }
@@ -155,6 +474,14 @@ public class App {
         return renderer;
     }
 
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    public ScriptSystem getScriptSystem() {
+        return scriptSystem;
+    }
+
     public KeyListener getInputHandler() {
         return inputHandler;
     }
@@ -0,0 +1,130 @@
+package core.entity;
+
+import java.util.Arrays;
+
+/**
+ * Dense struct-of-arrays table of the entities of an {@link EntityStore}
+ * sharing the same set of components.
+ * <p>
+ * Components are bits of the archetype <code>mask</code>, derived from the
+ * entity state: changing the active flag or the physic type of an entity
+ * moves it into another archetype. Slots are kept dense: removing an entity
+ * moves the last slot into the freed one, so systems can iterate from
+ * <code>0</code> to {@link #size()} without any hole nor per-entity test.
+ */
+public final class Archetype {
+
+    // the entity is active.
+    public static final int ACTIVE = 1;
+    // dynamic body, integrated by the PhysicSystem.
+    public static final int BODY = 1 << 1;
+    // constrained into the World bounds (dynamic and static entities).
+    public static final int COLLIDER = 1 << 2;
+    public static final int LIGHT = 1 << 3;
+    public static final int CAMERA = 1 << 4;
+    // drawn by the Renderer as an entity (not a light nor a camera).
+    public static final int DRAWABLE = 1 << 5;
+
+    private final int mask;
+    public double[] x, y, vx, vy, w, h;
+    // position at the previous simulation step (render interpolation).
+    public double[] px, py;
+    public double[] friction, elasticity;
+    private Entity[] owners;
+    private int size = 0;
+
+    Archetype(int mask, int capacity) {
+        this.mask = mask;
+        allocate(Math.max(capacity, 16));
+    }
+
+    private void allocate(int capacity) {
+        x = grow(x, capacity);
+        y = grow(y, capacity);
+        vx = grow(vx, capacity);
+        vy = grow(vy, capacity);
+        w = grow(w, capacity);
+        h = grow(h, capacity);
+        px = grow(px, capacity);
+        py = grow(py, capacity);
+        friction = grow(friction, capacity);
+        elasticity = grow(elasticity, capacity);
+        owners = owners == null ? new Entity[capacity] : Arrays.copyOf(owners, capacity);
+    }
+
+    private static double[] grow(double[] a, int capacity) {
+        return a == null ? new double[capacity] : Arrays.copyOf(a, capacity);
+    }
+
+    /**
+     * @return the new slot of the entity, whose values are left to the caller.
+     */
+    int add(Entity e) {
+        if (size == owners.length) {
+            allocate(owners.length * 2);
+        }
+        int slot = size++;
+        owners[slot] = e;
+        e.table = this;
+        e.slot = slot;
+        return slot;
+    }
+
+    /**
+     * Release the slot, moving the last one into it.
+     */
+    void remove(int slot) {
+        int last = --size;
+        if (slot != last) {
+            x[slot] = x[last];
+            y[slot] = y[last];
+            vx[slot] = vx[last];
+            vy[slot] = vy[last];
+            w[slot] = w[last];
+            h[slot] = h[last];
+            px[slot] = px[last];
+            py[slot] = py[last];
+            friction[slot] = friction[last];
+            elasticity[slot] = elasticity[last];
+            owners[slot] = owners[last];
+            owners[slot].slot = slot;
+        }
+        owners[last] = null;
+    }
+
+    /**
+     * Copy the values of the <code>slot</code> of this archetype into the
+     * <code>to</code> slot of <code>other</code>.
+     */
+    void copy(int slot, Archetype other, int to) {
+        other.x[to] = x[slot];
+        other.y[to] = y[slot];
+        other.vx[to] = vx[slot];
+        other.vy[to] = vy[slot];
+        other.w[to] = w[slot];
+        other.h[to] = h[slot];
+        other.px[to] = px[slot];
+        other.py[to] = py[slot];
+        other.friction[to] = friction[slot];
+        other.elasticity[to] = elasticity[slot];
+    }
+
+    /**
+     * @return true if this archetype has all the given components.
+     */
+    public boolean has(int components) {
+        return (mask & components) == components;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public Entity get(int slot) {
+        return owners[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+}
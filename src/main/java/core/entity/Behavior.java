@@ -0,0 +1,29 @@
+package core.entity;
+
+import java.awt.Graphics2D;
+
+/**
+ * Per-entity logic attached with <code>Entity.addBehavior()</code>.
+ * <p>
+ * <code>update()</code> is called by the PhysicSystem right after
+ * <code>Entity.update()</code>, with the same threading contract.
+ */
+public interface Behavior {
+
+    default void update(Entity e, double elapsed) {
+    }
+
+    /**
+     * Called when the behavior is removed from the entity, or when the entity
+     * is reset for recycling.
+     */
+    default void onDetached(Entity e) {
+    }
+
+    /**
+     * Draw debug information, called from <code>Entity.drawDebug()</code> when the
+     * debug level is greater than 1.
+     */
+    default void drawDebug(Entity e, Graphics2D g) {
+    }
+}
@@ -17,18 +17,22 @@ public class Camera extends Entity {
         return (T) this;
     }
 
+    public Entity getTarget() {
+        return target;
+    }
+
     @Override
     public void draw(Graphics2D g) {
         g.setColor(Color.GREEN.darker());
-        g.drawRect((int) position.getX() + 20, (int) position.getY() + 20, (int) width - 40, (int) height - 40);
+        g.drawRect((int) getX() + 20, (int) getY() + 20, (int) getWidth() - 40, (int) getHeight() - 40);
     }
 
     @Override
-    public void update(long elapsed) {
+    public void update(double elapsed) {
         if (target != null) {
             setPosition(
-                    target.position.getX() - (target.getWidth() + getWidth()) / 2,
-                    target.position.getY() - (target.getHeight() + getHeight()) / 2);
+                    target.getX() - (target.getWidth() + getWidth()) / 2,
+                    target.getY() - (target.getHeight() + getHeight()) / 2);
         }
     }
 }
@@ -3,7 +3,14 @@ package core.entity;
 import java.awt.*;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import core.gfx.Raster;
+import core.physic.CollisionHandler;
 import core.physic.Material;
 import core.physic.PhysicType;
 import core.scene.Scene;
@@ -13,20 +20,41 @@ public class Entity {
     private static long index = 0;
     protected long id = index++;
 
-    protected String name = "entity_%d".formatted(id);
+    // generated on first getName() call when not set.
+    protected String name;
 
     protected Point2D position = new Point2D.Double(0, 0);
     protected Point2D velocity = new Point2D.Double(0, 0);
+    // position at the previous simulation step, used for render interpolation;
+    // NaN until the first step, the entity being drawn at its current position.
+    protected double previousX = Double.NaN, previousY = Double.NaN;
+
+    // when attached to an EntityStore, the physic state lives into the arrays
+    // of its archetype table at slot index.
+    EntityStore store;
+    Archetype table;
+    int slot = -1;
     protected double width = 16;
     protected double height = 16;
 
     protected PhysicType physicType = PhysicType.DYNAMIC;
     protected Material material = Material.DEFAULT;
     protected boolean active = true;
+    // incremented on each setter call, to let caches detect a change.
+    protected long version = 0;
 
     private Color edgeColor = Color.WHITE;
     private Color fillColor = Color.BLUE;
 
+    private CollisionHandler collisionHandler;
+
+    private final Set<String> tags = new HashSet<>(2);
+    // created on the first addBehavior() call.
+    private List<Behavior> behaviors;
+    private EntityListener listener;
+    // true while the entity is back into its scene pool.
+    private boolean released = false;
+
 
     public Entity() {
     }
@@ -36,69 +64,301 @@ public class Entity {
     }
 
     public <T extends Entity> T setName(String name) {
+        version++;
+        String oldName = this.name;
         this.name = name;
+        if (listener != null) {
+            listener.onRenamed(this, oldName);
+        }
+        return (T) this;
+    }
+
+    public <T extends Entity> T addTag(String tag) {
+        if (tags.add(tag) && listener != null) {
+            listener.onTagAdded(this, tag);
+        }
+        return (T) this;
+    }
+
+    public <T extends Entity> T removeTag(String tag) {
+        if (tags.remove(tag) && listener != null) {
+            listener.onTagRemoved(this, tag);
+        }
         return (T) this;
     }
 
+    public boolean hasTag(String tag) {
+        return tags.contains(tag);
+    }
+
+    public Set<String> getTags() {
+        return Collections.unmodifiableSet(tags);
+    }
+
+    /**
+     * Set the container notified of the name and tags changes (one at a time).
+     */
+    public void setListener(EntityListener listener) {
+        this.listener = listener;
+    }
+
+    public EntityListener getListener() {
+        return listener;
+    }
+
     public <T extends Entity> T setPosition(double x, double y) {
-        this.position = new Point2D.Double(x, y);
+        version++;
+        if (table != null) {
+            table.x[slot] = x;
+            table.y[slot] = y;
+        } else {
+            this.position.setLocation(x, y);
+        }
+        if (physicType == PhysicType.STATIC && listener != null) {
+            listener.onStaticMoved(this);
+        }
         return (T) this;
     }
 
+    public void savePreviousPosition() {
+        if (table != null) {
+            table.px[slot] = table.x[slot];
+            table.py[slot] = table.y[slot];
+        } else {
+            this.previousX = position.getX();
+            this.previousY = position.getY();
+        }
+    }
+
+    /**
+     * Forget the previous position, e.g. for a spawned or recycled entity, to
+     * draw it at its current position until the next step.
+     */
+    public void clearPreviousPosition() {
+        if (table != null) {
+            table.px[slot] = Double.NaN;
+            table.py[slot] = Double.NaN;
+        } else {
+            this.previousX = Double.NaN;
+            this.previousY = Double.NaN;
+        }
+    }
+
+    public double getInterpolatedX(double alpha) {
+        double px = table != null ? table.px[slot] : previousX;
+        return Double.isNaN(px) ? getX() : px + (getX() - px) * alpha;
+    }
+
+    public double getInterpolatedY(double alpha) {
+        double py = table != null ? table.py[slot] : previousY;
+        return Double.isNaN(py) ? getY() : py + (getY() - py) * alpha;
+    }
+
     public <T extends Entity> T setVelocity(double dx, double dy) {
-        this.velocity = new Point2D.Double(dx, dy);
+        version++;
+        if (table != null) {
+            table.vx[slot] = dx;
+            table.vy[slot] = dy;
+        } else {
+            this.velocity.setLocation(dx, dy);
+        }
         return (T) this;
     }
 
     public <T extends Entity> T setSize(double w, double h) {
+        version++;
+        if (table != null) {
+            table.w[slot] = w;
+            table.h[slot] = h;
+        }
         this.width = w;
         this.height = h;
+        if (physicType == PhysicType.STATIC && listener != null) {
+            listener.onStaticMoved(this);
+        }
         return (T) this;
     }
 
     public <T extends Entity> T setEdgeColor(Color ec) {
+        version++;
         this.edgeColor = ec;
         return (T) this;
     }
 
     public <T extends Entity> T setFillColor(Color fc) {
+        version++;
         this.fillColor = fc;
         return (T) this;
     }
 
     public <T extends Entity> T setPhysicType(PhysicType physicType) {
+        version++;
+        PhysicType old = this.physicType;
         this.physicType = physicType;
+        if (store != null) {
+            store.refresh(this);
+        }
+        if (old != physicType && listener != null) {
+            listener.onPhysicTypeChanged(this);
+        }
         return (T) this;
     }
 
     public <T extends Entity> T setActive(boolean a) {
+        version++;
+        boolean old = this.active;
         this.active = a;
+        if (store != null) {
+            store.refresh(this);
+        }
+        if (old != a && listener != null) {
+            listener.onActiveChanged(this);
+        }
+        return (T) this;
+    }
+
+    public <T extends Entity> T setOnCollision(CollisionHandler handler) {
+        this.collisionHandler = handler;
         return (T) this;
     }
 
     public <T extends Entity> T setMaterial(Material m) {
+        version++;
         this.material = m;
+        if (store != null) {
+            store.refresh(this);
+        }
+        return (T) this;
+    }
+
+    /**
+     * Restore the default state of a recycled entity: position, velocity, size,
+     * physic type, material, colors, tags, behaviors and collision handler. The
+     * id is kept and the name will be generated again on demand.
+     */
+    public void reset() {
+        version++;
+        name = null;
+        setPosition(0, 0);
+        setVelocity(0, 0);
+        setSize(16, 16);
+        clearPreviousPosition();
+        physicType = PhysicType.DYNAMIC;
+        material = Material.DEFAULT;
+        active = true;
+        if (store != null) {
+            store.refresh(this);
+        }
+        edgeColor = Color.WHITE;
+        fillColor = Color.BLUE;
+        collisionHandler = null;
+        tags.clear();
+        clearBehaviors();
+    }
+
+    /**
+     * Copy the render state of <code>other</code> (id, name, current and
+     * previous positions, velocity, size, colors, physic type, material,
+     * active flag and version) into this detached entity, e.g. for a render
+     * snapshot.
+     */
+    public void copyFrom(Entity other) {
+        id = other.id;
+        name = other.name;
+        position.setLocation(other.getX(), other.getY());
+        previousX = other.getInterpolatedX(0);
+        previousY = other.getInterpolatedY(0);
+        velocity.setLocation(other.getVelocity());
+        width = other.getWidth();
+        height = other.getHeight();
+        edgeColor = other.edgeColor;
+        fillColor = other.fillColor;
+        physicType = other.physicType;
+        material = other.material;
+        active = other.active;
+        version = other.version;
+    }
+
+    /**
+     * Create a detached entity of the same class, to receive the render state
+     * of this one through {@link #copyFrom(Entity)}. A subclass drawing its
+     * own state overrides both.
+     */
+    public Entity newCopy() {
+        return new Entity();
+    }
+
+    public void setReleased(boolean released) {
+        this.released = released;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Give this entity the id it had in a restored scene snapshot. The
+     * entities created afterwards get greater ids. Must be called before the
+     * entity is indexed by a scene.
+     */
+    public <T extends Entity> T setId(long id) {
+        this.id = id;
+        if (id >= index) {
+            index = id + 1;
+        }
         return (T) this;
     }
 
     public String getName() {
+        if (this.name == null) {
+            this.name = "entity_" + id;
+        }
         return this.name;
     }
 
+    /**
+     * @return true if a name has been set or already generated.
+     */
+    public boolean hasName() {
+        return this.name != null;
+    }
+
     public Point2D getPosition() {
+        if (table != null) {
+            position.setLocation(table.x[slot], table.y[slot]);
+        }
         return this.position;
     }
 
     public Point2D getVelocity() {
+        if (table != null) {
+            velocity.setLocation(table.vx[slot], table.vy[slot]);
+        }
         return this.velocity;
     }
 
+    public double getX() {
+        return table != null ? table.x[slot] : position.getX();
+    }
+
+    public double getY() {
+        return table != null ? table.y[slot] : position.getY();
+    }
+
     public double getWidth() {
-        return this.width;
+        return table != null ? table.w[slot] : this.width;
     }
 
     public double getHeight() {
-        return this.height;
+        return table != null ? table.h[slot] : this.height;
     }
 
     public Color getEdgeColor() {
@@ -121,8 +381,23 @@ public class Entity {
 
     }
 
+    /**
+     * Draw the entity with the software rasterizer, when enabled
+     * (<code>app.gfx.raster</code>).
+     *
+     * @return false if the entity can't be drawn this way, the Renderer then
+     * calling {@link #draw(Graphics2D)}.
+     */
+    public boolean draw(Raster r) {
+        return getClass() == Entity.class;
+    }
+
     public void drawDebug(Scene scene, Graphics2D g, int debug) {
         if (debug > 0) {
+            Point2D position = getPosition();
+            Point2D velocity = getVelocity();
+            double width = getWidth();
+            double height = getHeight();
             g.setColor(Color.ORANGE);
             g.draw(new Rectangle2D.Double(position.getX(), position.getY(), width, height));
             World world = scene.getWorld();
@@ -141,7 +416,9 @@ public class Entity {
                         (int) ((position.getY() + height / 2) + world.getGravity().getY() * 5));
             }
             if (debug > 1) {
-                //getBehaviors().stream().forEach(b -> b.drawDebug(this, g));
+                for (int i = 0; i < getBehaviors().size(); i++) {
+                    getBehaviors().get(i).drawDebug(this, g);
+                }
                 if (debug > 2) {
                     g.setColor(Color.ORANGE);
                     g.setFont(g.getFont().deriveFont(Font.BOLD, 9f));
@@ -161,10 +438,59 @@ public class Entity {
 
     }
 
-    public void update(long elapsed) {
+    public <T extends Entity> T addBehavior(Behavior b) {
+        if (behaviors == null) {
+            behaviors = new ArrayList<>(2);
+        }
+        behaviors.add(b);
+        return (T) this;
+    }
+
+    public <T extends Entity> T removeBehavior(Behavior b) {
+        if (behaviors != null && behaviors.remove(b)) {
+            b.onDetached(this);
+        }
+        return (T) this;
+    }
+
+    private void clearBehaviors() {
+        if (behaviors != null) {
+            while (!behaviors.isEmpty()) {
+                behaviors.remove(behaviors.size() - 1).onDetached(this);
+            }
+        }
+    }
+
+    public List<Behavior> getBehaviors() {
+        return behaviors != null ? behaviors : Collections.emptyList();
+    }
+
+    /**
+     * Per-step entity logic, called by the PhysicSystem after the integration
+     * of all the entities and before the collisions, whatever the integration
+     * path (sequential, parallel or entity store) is: it sees every entity of
+     * the scene at its integrated position of this step.
+     * <p>
+     * Threading contract: this callback is always called from the game loop
+     * thread, one entity after the other in the scene order, even when the
+     * parallel integration (<code>app.physic.parallel</code>) is enabled: no
+     * worker thread is running while it executes, so it can safely read or
+     * modify any entity of the scene. Integration itself never calls user code.
+     */
+    public void update(double elapsed) {
 
     }
 
+    /**
+     * Called by the PhysicSystem once the collision with <code>other</code> has
+     * been resolved. <code>(nx, ny)</code> is the contact normal, pointing toward the other entity.
+     */
+    public void onCollision(Entity other, double nx, double ny) {
+        if (collisionHandler != null) {
+            collisionHandler.onCollision(this, other, nx, ny);
+        }
+    }
+
     public Material getMaterial() {
         return material;
     }
@@ -0,0 +1,30 @@
+package core.entity;
+
+/**
+ * Notified by an entity when one of its indexed attributes changes, to let
+ * its container (mostly the scene) keep its lookup structures up to date.
+ */
+public interface EntityListener {
+
+    default void onRenamed(Entity e, String oldName) {
+    }
+
+    default void onTagAdded(Entity e, String tag) {
+    }
+
+    default void onTagRemoved(Entity e, String tag) {
+    }
+
+    default void onActiveChanged(Entity e) {
+    }
+
+    default void onPhysicTypeChanged(Entity e) {
+    }
+
+    /**
+     * Called when a static entity is moved or resized; the dynamic ones are
+     * not notified.
+     */
+    default void onStaticMoved(Entity e) {
+    }
+}
@@ -0,0 +1,207 @@
+package core.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.physic.PhysicType;
+
+/**
+ * Archetype-based struct-of-arrays storage for the entity physic state.
+ * <p>
+ * Each attached {@link Entity} owns a slot into the {@link Archetype} table of
+ * its set of components (active, dynamic body, light, camera...), and
+ * reads/writes its position, velocity, size and physic attributes from there.
+ * The Entity, Light and Camera classes are thus adapters onto the store, their
+ * setters moving the entity to another archetype when its components change.
+ * <p>
+ * Systems get the archetypes having the components they need through a
+ * {@link Query}, cached and kept up to date as new archetypes are created, and
+ * process their dense arrays in tight loops.
+ */
+public class EntityStore {
+
+    /**
+     * The archetypes having all the <code>required</code> components and none
+     * of the <code>excluded</code> ones.
+     */
+    public static final class Query {
+        private final int required, excluded;
+        private final List<Archetype> archetypes = new ArrayList<>();
+        private final List<Archetype> view = Collections.unmodifiableList(archetypes);
+
+        private Query(int required, int excluded) {
+            this.required = required;
+            this.excluded = excluded;
+        }
+
+        private boolean matches(Archetype a) {
+            return a.has(required) && (a.getMask() & excluded) == 0;
+        }
+
+        public List<Archetype> getArchetypes() {
+            return view;
+        }
+
+        /**
+         * @return the number of matching entities.
+         */
+        public int count() {
+            int n = 0;
+            for (int i = 0; i < archetypes.size(); i++) {
+                n += archetypes.get(i).size();
+            }
+            return n;
+        }
+    }
+
+    private final int capacity;
+    private final List<Archetype> archetypes = new ArrayList<>();
+    private final Map<Integer, Archetype> archetypesByMask = new HashMap<>();
+    private final Map<Long, Query> queries = new HashMap<>();
+    private int size = 0;
+
+    /**
+     * @param capacity the initial capacity of the archetype of the active
+     *                 dynamic entities, the other ones starting smaller.
+     */
+    public EntityStore(int capacity) {
+        this.capacity = Math.max(capacity, 16);
+    }
+
+    /**
+     * @return the components of the entity, according to its current state.
+     */
+    static int componentsOf(Entity e) {
+        int mask = e.active ? Archetype.ACTIVE : 0;
+        if (e instanceof Camera) {
+            return mask | Archetype.CAMERA;
+        }
+        if (e.physicType == PhysicType.DYNAMIC) {
+            mask |= Archetype.BODY | Archetype.COLLIDER;
+        } else if (e.physicType == PhysicType.STATIC) {
+            mask |= Archetype.COLLIDER;
+        }
+        return mask | (e instanceof Light ? Archetype.LIGHT : Archetype.DRAWABLE);
+    }
+
+    private Archetype archetype(int mask) {
+        Archetype a = archetypesByMask.get(mask);
+        if (a == null) {
+            boolean main = mask == (Archetype.ACTIVE | Archetype.BODY | Archetype.COLLIDER | Archetype.DRAWABLE);
+            a = new Archetype(mask, main ? capacity : 16);
+            archetypes.add(a);
+            archetypesByMask.put(mask, a);
+            for (Query q : queries.values()) {
+                if (q.matches(a)) {
+                    q.archetypes.add(a);
+                }
+            }
+        }
+        return a;
+    }
+
+    /**
+     * @return the cached query of the archetypes having all the
+     * <code>required</code> components and none of the <code>excluded</code> ones.
+     */
+    public Query query(int required, int excluded) {
+        return queries.computeIfAbsent(((long) required << 32) | (excluded & 0xFFFFFFFFL), k -> {
+            Query q = new Query(required, excluded);
+            for (Archetype a : archetypes) {
+                if (q.matches(a)) {
+                    q.archetypes.add(a);
+                }
+            }
+            return q;
+        });
+    }
+
+    /**
+     * Move the entity state into a new slot of this store. From now on, the
+     * entity accessors read and write the store arrays.
+     */
+    public void attach(Entity e) {
+        if (e.store != null) {
+            return;
+        }
+        Archetype a = archetype(componentsOf(e));
+        int slot = a.add(e);
+        a.x[slot] = e.position.getX();
+        a.y[slot] = e.position.getY();
+        a.vx[slot] = e.velocity.getX();
+        a.vy[slot] = e.velocity.getY();
+        a.w[slot] = e.width;
+        a.h[slot] = e.height;
+        a.px[slot] = e.previousX;
+        a.py[slot] = e.previousY;
+        a.friction[slot] = e.material.friction();
+        a.elasticity[slot] = e.material.elasticity();
+        e.store = this;
+        size++;
+    }
+
+    /**
+     * Copy back the slot values into the entity fields and release the slot.
+     */
+    public void detach(Entity e) {
+        if (e.store != this) {
+            return;
+        }
+        Archetype a = e.table;
+        int slot = e.slot;
+        e.position.setLocation(a.x[slot], a.y[slot]);
+        e.velocity.setLocation(a.vx[slot], a.vy[slot]);
+        e.width = a.w[slot];
+        e.height = a.h[slot];
+        e.previousX = a.px[slot];
+        e.previousY = a.py[slot];
+        a.remove(slot);
+        e.store = null;
+        e.table = null;
+        e.slot = -1;
+        size--;
+    }
+
+    /**
+     * Update the material values of the entity slot, and move the entity to
+     * the archetype of its components when they changed.
+     */
+    void refresh(Entity e) {
+        Archetype from = e.table;
+        int mask = componentsOf(e);
+        if (mask != from.getMask()) {
+            Archetype to = archetype(mask);
+            int slot = e.slot;
+            from.copy(slot, to, to.add(e));
+            from.remove(slot);
+        }
+        e.table.friction[e.slot] = e.material.friction();
+        e.table.elasticity[e.slot] = e.material.elasticity();
+    }
+
+    /**
+     * Copy the current positions as the previous ones, for all the slots but
+     * the static entities ones, which never move during a step.
+     */
+    public void savePreviousPositions() {
+        for (int i = 0; i < archetypes.size(); i++) {
+            Archetype a = archetypes.get(i);
+            if (a.has(Archetype.COLLIDER | Archetype.DRAWABLE) && !a.has(Archetype.BODY)) {
+                continue;
+            }
+            System.arraycopy(a.x, 0, a.px, 0, a.size());
+            System.arraycopy(a.y, 0, a.py, 0, a.size());
+        }
+    }
+
+    public List<Archetype> getArchetypes() {
+        return Collections.unmodifiableList(archetypes);
+    }
+
+    public int size() {
+        return size;
+    }
+}
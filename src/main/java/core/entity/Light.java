@@ -5,8 +5,10 @@ import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.RadialGradientPaint;
+import java.util.SplittableRandom;
 
 import core.physic.PhysicType;
+import core.utils.RandomService;
 import core.utils.Utils;
 
 public class Light extends Entity {
@@ -15,9 +17,13 @@ public class Light extends Entity {
     private double radius = 10;
     private double vibration = 0.0;
     private double direction = 0f;
+    // intensity flicker, part of the simulation, and position jitter when drawn.
+    private final SplittableRandom flicker;
+    private SplittableRandom jitter;
 
     public Light(String name) {
         super(name);
+        flicker = RandomService.create("light:" + name);
         setPhysicType(PhysicType.STATIC);
     }
 
@@ -49,9 +55,9 @@ public class Light extends Entity {
     }
 
     @Override
-    public void update(long elapsed) {
+    public void update(double elapsed) {
         if (vibration != -1) {
-            intensityDraw = (intensity * 0.9) + (Math.random() * 0.1);
+            intensityDraw = (intensity * 0.9) + (flicker.nextDouble() * 0.1);
         }
     }
 
@@ -62,16 +68,37 @@ public class Light extends Entity {
                 Utils.setAlpha(getFillColor(), (float) (intensityDraw)), // bord transparent
                 Utils.setAlpha(getFillColor(), (float) (intensityDraw * 0.2)), // bord transparent
         };
-        RadialGradientPaint paint = new RadialGradientPaint(position, (float) radius, dist, colors);
+        RadialGradientPaint paint = new RadialGradientPaint(getPosition(), (float) radius, dist, colors);
         Composite oldComposite = g2d.getComposite();
         g2d.setPaint(paint);
         g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
         double variance = (vibration != -1) ? vibration : 0.0;
-        g2d.fillOval((int) (position.getX() - radius + Math.random() * variance),
-                (int) (position.getY() - radius + Math.random() * variance), (int) radius * 2, (int) radius * 2);
+        if (jitter == null) {
+            jitter = RandomService.create("light:draw:" + getName());
+        }
+        g2d.fillOval((int) (getX() - radius + jitter.nextDouble() * variance),
+                (int) (getY() - radius + jitter.nextDouble() * variance), (int) radius * 2, (int) radius * 2);
         g2d.setComposite(oldComposite);
     }
 
+    @Override
+    public void copyFrom(Entity other) {
+        super.copyFrom(other);
+        if (other instanceof Light l) {
+            lightType = l.lightType;
+            intensity = l.intensity;
+            intensityDraw = l.intensityDraw;
+            radius = l.radius;
+            vibration = l.vibration;
+            direction = l.direction;
+        }
+    }
+
+    @Override
+    public Light newCopy() {
+        return new Light("snapshot");
+    }
+
     public Light setVibration(double v) {
         this.vibration = v;
         return this;
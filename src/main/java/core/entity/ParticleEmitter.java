@@ -0,0 +1,236 @@
+package core.entity;
+
+import java.awt.Color;
+import java.util.SplittableRandom;
+
+import core.physic.Material;
+import core.physic.PhysicType;
+import core.utils.RandomService;
+
+/**
+ * Emitter of lightweight particles.
+ * <p>
+ * Particles are not entities: their state is stored in primitive arrays
+ * (struct-of-arrays), kept dense by moving the last particle into the slot
+ * of a dead one. They are integrated with the same model as the dynamic
+ * entities (World gravity, material friction and elasticity against the World
+ * bounds) but without collision, and the Renderer writes them directly into
+ * its pixel buffer.
+ * <p>
+ * The emitter itself spawns the particles into its own area
+ * (position/size), at <code>rate</code> particles per second, with a
+ * velocity of <code>speed</code> pixels per ms into the
+ * <code>[direction - spread / 2, direction + spread / 2]</code> angle range.
+ * A particle fades out along its lifetime. Emitters are added to the scene
+ * with <code>addEmitter()</code>.
+ */
+public class ParticleEmitter extends Entity {
+
+    public float[] x, y, vx, vy;
+    // remaining life time, in ms.
+    public float[] life;
+    private int count = 0;
+    private final int capacity;
+
+    private double rate = 100;
+    private double lifetime = 1000;
+    private double speed = 0.1;
+    private double direction = -Math.PI / 2;
+    private double spread = Math.PI / 4;
+    private Material particleMaterial = Material.DEFAULT;
+    private int color = 0xFFFFFFFF;
+    private boolean emitting = true;
+
+    // fractional number of particles to be emitted at the next step.
+    private double pending = 0;
+    private final SplittableRandom random;
+
+    // bounding box of the living particles, as of the last integration.
+    private double minX, minY, maxX, maxY;
+
+    public ParticleEmitter(String name, int capacity) {
+        super(name);
+        this.capacity = capacity;
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        life = new float[capacity];
+        random = RandomService.create("emitter:" + name);
+        setSize(1, 1);
+        setPhysicType(PhysicType.NONE);
+    }
+
+    public ParticleEmitter setRate(double particlesPerSecond) {
+        this.rate = particlesPerSecond;
+        return this;
+    }
+
+    public ParticleEmitter setLifetime(double ms) {
+        this.lifetime = ms;
+        return this;
+    }
+
+    public ParticleEmitter setSpeed(double speed) {
+        this.speed = speed;
+        return this;
+    }
+
+    public ParticleEmitter setDirection(double angle, double spread) {
+        this.direction = angle;
+        this.spread = spread;
+        return this;
+    }
+
+    public ParticleEmitter setParticleMaterial(Material m) {
+        this.particleMaterial = m;
+        return this;
+    }
+
+    public ParticleEmitter setParticleColor(Color c) {
+        this.color = c.getRGB();
+        return this;
+    }
+
+    public ParticleEmitter setEmitting(boolean emitting) {
+        this.emitting = emitting;
+        return this;
+    }
+
+    /**
+     * Spawn <code>n</code> particles at once (as far as the capacity allows).
+     */
+    public void burst(int n) {
+        double ex = getX(), ey = getY(), ew = getWidth(), eh = getHeight();
+        int end = Math.min(capacity, count + n);
+        for (int i = count; i < end; i++) {
+            double angle = direction + (random.nextDouble() - 0.5) * spread;
+            double s = speed * (0.5 + random.nextDouble());
+            x[i] = (float) (ex + random.nextDouble() * ew);
+            y[i] = (float) (ey + random.nextDouble() * eh);
+            vx[i] = (float) (Math.cos(angle) * s);
+            vy[i] = (float) (Math.sin(angle) * s);
+            life[i] = (float) (lifetime * (0.5 + random.nextDouble() * 0.5));
+        }
+        count = end;
+    }
+
+    /**
+     * Emit the new particles of this step, then integrate and constrain all the
+     * living ones into the World, and remove the dead ones.
+     */
+    public void integrate(World w, double elapsed) {
+        if (emitting) {
+            pending += rate * elapsed / 1000.0;
+            int n = (int) pending;
+            pending -= n;
+            burst(n);
+        }
+        final float gx = (float) (w.getGravity().getX() * 0.01);
+        final float gy = (float) (w.getGravity().getY() * 0.01);
+        final float friction = (float) particleMaterial.friction();
+        final float elasticity = (float) particleMaterial.elasticity();
+        final float wMinX = (float) w.getX(), wMinY = (float) w.getY();
+        final float wMaxX = (float) (w.getX() + w.getWidth()), wMaxY = (float) (w.getY() + w.getHeight());
+        final float dt = (float) elapsed;
+        final float[] x = this.x, y = this.y, vx = this.vx, vy = this.vy, life = this.life;
+        float bMinX = Float.MAX_VALUE, bMinY = Float.MAX_VALUE, bMaxX = -Float.MAX_VALUE, bMaxY = -Float.MAX_VALUE;
+        int n = count;
+        int i = 0;
+        while (i < n) {
+            float l = life[i] - dt;
+            if (l <= 0) {
+                // move the last particle here, and process it now.
+                n--;
+                x[i] = x[n];
+                y[i] = y[n];
+                vx[i] = vx[n];
+                vy[i] = vy[n];
+                life[i] = life[n];
+                continue;
+            }
+            life[i] = l;
+            float px = x[i] + (vx[i] + gx) * dt;
+            float py = y[i] + (vy[i] + gy) * dt;
+            float pvx = vx[i] * friction;
+            float pvy = vy[i] * friction;
+            if (px < wMinX) {
+                px = wMinX;
+                pvx = -pvx * elasticity;
+            } else if (px > wMaxX) {
+                px = wMaxX;
+                pvx = -pvx * elasticity;
+            }
+            if (py < wMinY) {
+                py = wMinY;
+                pvy = -pvy * elasticity;
+            } else if (py > wMaxY) {
+                py = wMaxY;
+                pvy = -pvy * elasticity;
+            }
+            x[i] = px;
+            y[i] = py;
+            vx[i] = pvx;
+            vy[i] = pvy;
+            bMinX = Math.min(bMinX, px);
+            bMinY = Math.min(bMinY, py);
+            bMaxX = Math.max(bMaxX, px);
+            bMaxY = Math.max(bMaxY, py);
+            i++;
+        }
+        count = n;
+        minX = bMinX;
+        minY = bMinY;
+        maxX = bMaxX;
+        maxY = bMaxY;
+    }
+
+    /**
+     * Copy the living particles positions and life of <code>other</code>, which
+     * must not have a bigger capacity, and its render parameters.
+     */
+    @Override
+    public void copyFrom(Entity other) {
+        super.copyFrom(other);
+        if (other instanceof ParticleEmitter pe) {
+            count = Math.min(capacity, pe.count);
+            System.arraycopy(pe.x, 0, x, 0, count);
+            System.arraycopy(pe.y, 0, y, 0, count);
+            System.arraycopy(pe.life, 0, life, 0, count);
+            color = pe.color;
+            lifetime = pe.lifetime;
+            minX = pe.minX;
+            minY = pe.minY;
+            maxX = pe.maxX;
+            maxY = pe.maxY;
+        }
+    }
+
+    @Override
+    public ParticleEmitter newCopy() {
+        return new ParticleEmitter("snapshot", capacity);
+    }
+
+    /**
+     * @return true if some living particles may be inside the given view.
+     */
+    public boolean intersects(double viewX, double viewY, double viewW, double viewH) {
+        return count > 0 && maxX >= viewX && minX <= viewX + viewW && maxY >= viewY && minY <= viewY + viewH;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getParticleColor() {
+        return color;
+    }
+
+    public double getLifetime() {
+        return lifetime;
+    }
+}
@@ -2,8 +2,10 @@ package core.entity;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 
+import core.gfx.Raster;
 import core.physic.PhysicType;
 
 public class World extends Entity {
@@ -27,14 +29,57 @@ public class World extends Entity {
         return this.gravity;
     }
 
+    @Override
+    public void copyFrom(Entity other) {
+        super.copyFrom(other);
+        if (other instanceof World w) {
+            gravity.setLocation(w.gravity);
+        }
+    }
+
+    @Override
+    public World newCopy() {
+        return new World("snapshot", 0, 0);
+    }
+
     @Override
     public void draw(Graphics2D g) {
-        for (int ix = 0; ix < getWidth(); ix += 8) {
-            for (int iy = 0; iy < getHeight(); iy += 8) {
+        int x = (int) getX(), y = (int) getY();
+        int minX = 0, minY = 0, maxX = (int) getWidth(), maxY = (int) getHeight();
+        // only draw the grid points inside the clip area, if any.
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            minX = Math.max(minX, ((clip.x - x) / 8) * 8);
+            minY = Math.max(minY, ((clip.y - y) / 8) * 8);
+            maxX = Math.min(maxX, clip.x + clip.width - x + 1);
+            maxY = Math.min(maxY, clip.y + clip.height - y + 1);
+        }
+        for (int ix = minX; ix < maxX; ix += 8) {
+            for (int iy = minY; iy < maxY; iy += 8) {
                 g.drawLine(
-                        (int) position.getX() + ix, (int) position.getY() + iy,
-                        (int) position.getX() + ix, (int) position.getY() + iy);
+                        x + ix, y + iy,
+                        x + ix, y + iy);
+            }
+        }
+    }
+
+    @Override
+    public boolean draw(Raster r) {
+        if (getEdgeColor() == null) {
+            return true;
+        }
+        int argb = getEdgeColor().getRGB();
+        int x = (int) getX(), y = (int) getY();
+        // only the grid points inside the raster.
+        int minX = Math.max(0, ((r.getOriginX() - x) / 8) * 8);
+        int minY = Math.max(0, ((r.getOriginY() - y) / 8) * 8);
+        int maxX = Math.min((int) getWidth(), r.getOriginX() + r.getWidth() - x + 1);
+        int maxY = Math.min((int) getHeight(), r.getOriginY() + r.getHeight() - y + 1);
+        for (int ix = minX; ix < maxX; ix += 8) {
+            for (int iy = minY; iy < maxY; iy += 8) {
+                r.plot(x + ix, y + iy, argb);
             }
         }
+        return true;
     }
 }
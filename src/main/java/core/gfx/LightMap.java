@@ -0,0 +1,201 @@
+package core.gfx;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.RadialGradientPaint;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+
+import core.entity.Light;
+import core.utils.RandomService;
+import core.utils.Utils;
+
+/**
+ * Light rendering stage.
+ * <p>
+ * Lights are drawn into a separate (optionally downscaled) transparent buffer,
+ * which is then composited once over the scene. Point light gradients are
+ * pre-rendered into sprites, shared between the lights having the same
+ * (radius, color), with one sprite per intensity bucket: the light flickering
+ * only switches between cached sprites. The per-light state is only rebuilt
+ * when the light radius, color or intensity change.
+ */
+public class LightMap {
+
+    private static final int INTENSITY_BUCKETS = 32;
+    private static final float[] GRADIENT_DISTANCES = {0.0f, 0.3f, 0.8f};
+
+    /**
+     * Rendering state cached for one light.
+     */
+    private static class LightState {
+        int rgb;
+        int radius;
+        double intensity = Double.NaN;
+        Composite composite;
+        BufferedImage[] sprites;
+        Color[] colors = new Color[INTENSITY_BUCKETS];
+    }
+
+    private record SpriteKey(int radius, int rgb) {
+    }
+
+    private double scale;
+    private BufferedImage buffer;
+    private Graphics2D g;
+    private final AffineTransform identity = new AffineTransform();
+    private final AffineTransform world = new AffineTransform();
+    private final Polygon triangle = new Polygon(new int[3], new int[3], 3);
+
+    private final Map<SpriteKey, BufferedImage[]> sprites = new HashMap<>();
+    private final Map<Light, LightState> states = new WeakHashMap<>();
+    // light jitter, apart from the simulation generators.
+    private final SplittableRandom random = RandomService.create("render:lightmap");
+
+    public LightMap(double scale) {
+        this.scale = clampScale(scale);
+    }
+
+    private static double clampScale(double scale) {
+        return scale > 0 && scale <= 1.0 ? scale : 1.0;
+    }
+
+    /**
+     * Change the scale of the light map: the buffer and the light sprites are
+     * created again at the next frame.
+     */
+    public void setScale(double scale) {
+        double s = clampScale(scale);
+        if (s != this.scale) {
+            this.scale = s;
+            buffer = null;
+            sprites.clear();
+            states.clear();
+        }
+    }
+
+    /**
+     * Clear the light map for a new frame, for a render buffer of the given size
+     * and a view starting at (viewX, viewY) in the world.
+     */
+    public void begin(int width, int height, double viewX, double viewY) {
+        int w = Math.max(1, (int) Math.ceil(width * scale));
+        int h = Math.max(1, (int) Math.ceil(height * scale));
+        if (buffer == null || buffer.getWidth() != w || buffer.getHeight() != h) {
+            if (g != null) {
+                g.dispose();
+            }
+            buffer = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            g = buffer.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        g.setTransform(identity);
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, w, h);
+        world.setToScale(scale, scale);
+        world.translate(-viewX, -viewY);
+    }
+
+    public void draw(Light l) {
+        LightState s = getState(l);
+        double intensityDraw = Math.max(0.0, Math.min(1.0, l.getIntensityDraw()));
+        int bucket = (int) Math.round(intensityDraw * (INTENSITY_BUCKETS - 1));
+        switch (l.getLightType()) {
+            case POINT -> {
+                BufferedImage sprite = s.sprites[bucket];
+                if (sprite == null) {
+                    sprite = s.sprites[bucket] = createSprite(s.radius, l.getFillColor(), bucket);
+                }
+                double x = (l.getX() - l.getRadius() + random.nextDouble() * l.getVibration()) * scale + world.getTranslateX();
+                double y = (l.getY() - l.getRadius() + random.nextDouble() * l.getVibration()) * scale + world.getTranslateY();
+                g.setTransform(identity);
+                g.setComposite(AlphaComposite.SrcOver);
+                g.drawImage(sprite, (int) x, (int) y, null);
+            }
+            case DIRECTIONAL, AREA -> {
+                g.setTransform(world);
+                g.setComposite(s.composite);
+                g.setColor(l.getFillColor());
+                g.fillRect((int) l.getX(), (int) l.getY(), (int) l.getWidth(), (int) l.getHeight());
+            }
+            case SPOT -> {
+                Color c = s.colors[bucket];
+                if (c == null) {
+                    c = s.colors[bucket] = Utils.setAlpha(l.getFillColor(), bucket / (float) (INTENSITY_BUCKETS - 1));
+                }
+                int x = (int) l.getX(), y = (int) l.getY();
+                triangle.xpoints[0] = x;
+                triangle.ypoints[0] = y;
+                triangle.xpoints[1] = x + (int) l.getWidth() / 2;
+                triangle.ypoints[1] = y + (int) l.getHeight();
+                triangle.xpoints[2] = x + (int) l.getWidth();
+                triangle.ypoints[2] = y;
+                triangle.invalidate();
+                g.setTransform(world);
+                g.rotate(l.getDirection(), l.getX(), l.getY());
+                g.setComposite(s.composite);
+                g.setColor(c);
+                g.fill(triangle);
+            }
+        }
+    }
+
+    /**
+     * Composite the light map over the scene render buffer.
+     */
+    public void end(Graphics2D target, int width, int height) {
+        if (scale < 1.0) {
+            target.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        target.drawImage(buffer, 0, 0, width, height, null);
+    }
+
+    private LightState getState(Light l) {
+        LightState s = states.get(l);
+        if (s == null) {
+            s = new LightState();
+            states.put(l, s);
+        }
+        int rgb = l.getFillColor().getRGB();
+        int radius = Math.max(1, (int) Math.round(l.getRadius() * scale));
+        if (s.sprites == null || s.rgb != rgb || s.radius != radius) {
+            s.rgb = rgb;
+            s.radius = radius;
+            s.sprites = sprites.computeIfAbsent(new SpriteKey(radius, rgb),
+                    k -> new BufferedImage[INTENSITY_BUCKETS]);
+            s.colors = new Color[INTENSITY_BUCKETS];
+        }
+        if (s.intensity != l.getIntensity()) {
+            s.intensity = l.getIntensity();
+            s.composite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER,
+                    (float) Math.max(0.0, Math.min(1.0, s.intensity)));
+        }
+        return s;
+    }
+
+    private static BufferedImage createSprite(int radius, Color color, int bucket) {
+        float intensity = bucket / (float) (INTENSITY_BUCKETS - 1);
+        BufferedImage sprite = new BufferedImage(radius * 2, radius * 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D sg = sprite.createGraphics();
+        sg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Color[] colors = {color,
+                Utils.setAlpha(color, intensity),
+                Utils.setAlpha(color, intensity * 0.2f)};
+        sg.setPaint(new RadialGradientPaint(radius, radius, radius, GRADIENT_DISTANCES, colors));
+        sg.fillOval(0, 0, radius * 2, radius * 2);
+        sg.dispose();
+        return sprite;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+}
@@ -0,0 +1,226 @@
+package core.gfx;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Software rasterizer writing axis-aligned rectangles, lines and points
+ * straight into the pixels of an <code>int</code> ARGB image, without going
+ * through Java2D.
+ * <p>
+ * Opaque colors are written as is, translucent ones are alpha blended over
+ * the current pixel. All the coordinates are integers, relative to the
+ * origin set with {@link #setOrigin(int, int)} (e.g. the camera position),
+ * and clipped to the image bounds, or to the clip rectangle when set (several
+ * rasters can then share the same image, one per tile).
+ */
+public class Raster {
+
+    private final int[] pixels;
+    private final int width, height;
+    private int originX, originY;
+    // clip rectangle, in pixels: [clipX0, clipX1[ x [clipY0, clipY1[
+    private int clipX0, clipY0, clipX1, clipY1;
+
+    public Raster(BufferedImage image) {
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        setClip(0, 0, width, height);
+    }
+
+    /**
+     * Restrict the drawing to the given rectangle of pixels.
+     */
+    public void setClip(int x, int y, int w, int h) {
+        clipX0 = Math.max(0, x);
+        clipY0 = Math.max(0, y);
+        clipX1 = Math.min(width, x + w);
+        clipY1 = Math.min(height, y + h);
+    }
+
+    /**
+     * Set the coordinates mapped to the top-left pixel of the image.
+     */
+    public void setOrigin(int x, int y) {
+        this.originX = x;
+        this.originY = y;
+    }
+
+    public void clear(int argb) {
+        if (clipX0 == 0 && clipY0 == 0 && clipX1 == width && clipY1 == height) {
+            Arrays.fill(pixels, argb);
+        } else {
+            fillRect(clipX0 + originX, clipY0 + originY, clipX1 - clipX0, clipY1 - clipY0, argb);
+        }
+    }
+
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(clipX0, x - originX), y0 = Math.max(clipY0, y - originY);
+        int x1 = Math.min(clipX1, x - originX + w), y1 = Math.min(clipY1, y - originY + h);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        int a = argb >>> 24;
+        for (int py = y0; py < y1; py++) {
+            int offset = py * width;
+            if (a == 255) {
+                Arrays.fill(pixels, offset + x0, offset + x1, argb);
+            } else {
+                for (int i = offset + x0; i < offset + x1; i++) {
+                    pixels[i] = blend(pixels[i], argb, a);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw the outline of the rectangle, covering <code>w + 1</code> x
+     * <code>h + 1</code> pixels as <code>Graphics.drawRect()</code> does.
+     */
+    public void drawRect(int x, int y, int w, int h, int argb) {
+        if (w < 0 || h < 0) {
+            return;
+        }
+        fillRect(x, y, w + 1, 1, argb);
+        if (h > 0) {
+            fillRect(x, y + h, w + 1, 1, argb);
+        }
+        if (h > 1) {
+            fillRect(x, y + 1, 1, h - 1, argb);
+            if (w > 0) {
+                fillRect(x + w, y + 1, 1, h - 1, argb);
+            }
+        }
+    }
+
+    public void drawLine(int x0, int y0, int x1, int y1, int argb) {
+        if (y0 == y1) {
+            fillRect(Math.min(x0, x1), y0, Math.abs(x1 - x0) + 1, 1, argb);
+            return;
+        }
+        if (x0 == x1) {
+            fillRect(x0, Math.min(y0, y1), 1, Math.abs(y1 - y0) + 1, argb);
+            return;
+        }
+        // Bresenham
+        int dx = Math.abs(x1 - x0), dy = -Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1, sy = y0 < y1 ? 1 : -1;
+        int err = dx + dy;
+        while (true) {
+            plot(x0, y0, argb);
+            if (x0 == x1 && y0 == y1) {
+                return;
+            }
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+    }
+
+    public void plot(int x, int y, int argb) {
+        int px = x - originX, py = y - originY;
+        if (px < clipX0 || py < clipY0 || px >= clipX1 || py >= clipY1) {
+            return;
+        }
+        int a = argb >>> 24;
+        int offset = py * width + px;
+        pixels[offset] = a == 255 ? argb : blend(pixels[offset], argb, a);
+    }
+
+    /**
+     * Blend <code>count</code> points of the <code>rgb</code> color, the alpha of
+     * each point being <code>weight[i] * weightScale</code> [0..255].
+     *
+     * @return the number of points inside the clip rectangle.
+     */
+    public int plotPoints(float[] x, float[] y, float[] weight, float weightScale, int count, int rgb) {
+        final int[] pixels = this.pixels;
+        final int width = this.width;
+        final float ox = originX, oy = originY;
+        int drawn = 0;
+        for (int i = 0; i < count; i++) {
+            // same pixel whatever the clip is (e.g. a tile), negative ones being out of the image.
+            float rx = x[i] - ox, ry = y[i] - oy;
+            if (rx < 0 || ry < 0) {
+                continue;
+            }
+            int px = (int) rx, py = (int) ry;
+            if (px < clipX0 || py < clipY0 || px >= clipX1 || py >= clipY1) {
+                continue;
+            }
+            int a = Math.min(255, (int) (weight[i] * weightScale));
+            int offset = py * width + px;
+            pixels[offset] = blend(pixels[offset], rgb, a);
+            drawn++;
+        }
+        return drawn;
+    }
+
+    /**
+     * Same as {@link #plotPoints(float[], float[], float[], float, int, int)},
+     * for the points <code>indices[from..to[</code> only.
+     */
+    public int plotPoints(float[] x, float[] y, float[] weight, float weightScale, int[] indices, int from, int to,
+            int rgb) {
+        final int[] pixels = this.pixels;
+        final int width = this.width;
+        final float ox = originX, oy = originY;
+        int drawn = 0;
+        for (int k = from; k < to; k++) {
+            int i = indices[k];
+            float rx = x[i] - ox, ry = y[i] - oy;
+            if (rx < 0 || ry < 0) {
+                continue;
+            }
+            int px = (int) rx, py = (int) ry;
+            if (px < clipX0 || py < clipY0 || px >= clipX1 || py >= clipY1) {
+                continue;
+            }
+            int a = Math.min(255, (int) (weight[i] * weightScale));
+            int offset = py * width + px;
+            pixels[offset] = blend(pixels[offset], rgb, a);
+            drawn++;
+        }
+        return drawn;
+    }
+
+    /**
+     * Blend the <code>src</code> color with the <code>a</code> [0..255] alpha
+     * over the <code>dst</code> opaque pixel.
+     */
+    static int blend(int dst, int src, int a) {
+        int na = 256 - a;
+        a++;
+        int rb = (((src & 0xFF00FF) * a + (dst & 0xFF00FF) * na) >>> 8) & 0xFF00FF;
+        int g = (((src & 0x00FF00) * a + (dst & 0x00FF00) * na) >>> 8) & 0x00FF00;
+        return 0xFF000000 | rb | g;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
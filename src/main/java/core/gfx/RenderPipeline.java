@@ -0,0 +1,113 @@
+package core.gfx;
+
+import java.awt.Dimension;
+import java.util.concurrent.locks.LockSupport;
+
+import core.scene.Scene;
+import core.scene.SceneSnapshot;
+
+/**
+ * Lock-free handoff of scene snapshots from the simulation thread (single
+ * producer) to the render thread (single consumer).
+ * <p>
+ * The pipeline is a ring of <code>depth</code> snapshots. The producer
+ * captures the scene into the next free snapshot and publishes it; the
+ * consumer always takes the latest published snapshot, which frees all the
+ * older ones, and keeps drawing it until a newer one is published. The
+ * producer never waits: when no snapshot is free (the renderer is late), the
+ * capture is skipped.
+ * <p>
+ * In lockstep mode (the headless runs), the producer waits for a free
+ * snapshot instead, and the consumer takes the snapshots in their publication
+ * order, so that every published step is drawn.
+ */
+public class RenderPipeline {
+
+    private final SceneSnapshot[] snapshots;
+    private final boolean lockstep;
+
+    // number of published snapshots, written by the producer only.
+    private volatile long published = 0;
+    // snapshots with a sequence lower than released are free, written by the consumer only.
+    private volatile long released = 0;
+    private volatile boolean closed = false;
+
+    // consumer side only
+    private long current = -1;
+    private long skipped = 0;
+
+    public RenderPipeline(int depth, Dimension bufferSize, boolean lockstep) {
+        this.lockstep = lockstep;
+        snapshots = new SceneSnapshot[Math.max(2, depth)];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new SceneSnapshot(bufferSize.width, bufferSize.height);
+        }
+    }
+
+    /**
+     * Capture the scene into the next free snapshot, and publish it.
+     *
+     * @return false if the renderer still holds all the snapshots.
+     */
+    public boolean publish(Scene scene, long time) {
+        long seq = published;
+        while (lockstep && seq - released >= snapshots.length && !closed) {
+            LockSupport.parkNanos(50_000L);
+        }
+        if (seq - released >= snapshots.length) {
+            skipped++;
+            return false;
+        }
+        snapshots[(int) (seq % snapshots.length)].capture(scene, time);
+        published = seq + 1;
+        return true;
+    }
+
+    /**
+     * @return the latest published snapshot (the next one in lockstep mode),
+     * which stays valid until the next call, or null if nothing has been
+     * published yet.
+     */
+    public SceneSnapshot acquire() {
+        long latest = lockstep ? Math.min(current + 1, published - 1) : published - 1;
+        if (latest > current) {
+            current = latest;
+            // frees the previous one and the ones never drawn.
+            released = latest;
+        }
+        return current >= 0 ? snapshots[(int) (current % snapshots.length)] : null;
+    }
+
+    /**
+     * @return the sequence number of the snapshot returned by the last {@link #acquire()}.
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return true if a snapshot newer than the current one has been published.
+     */
+    public boolean hasPending() {
+        return current < published - 1;
+    }
+
+    /**
+     * @return the number of captures skipped because no snapshot was free.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getDepth() {
+        return snapshots.length;
+    }
+}
@@ -8,35 +8,127 @@ import java.awt.event.WindowEvent;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
 
+import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.WindowConstants;
 
 import core.App;
+import core.entity.Camera;
 import core.entity.Entity;
 import core.entity.Light;
 import core.entity.LightType;
+import core.entity.ParticleEmitter;
+import core.entity.World;
+import core.physic.SpatialHash;
 import core.scene.Scene;
+import core.utils.Configuration;
+import core.utils.Profiler;
+import core.utils.RandomService;
 import core.utils.Utils;
 
 public class Renderer {
 
     private App app;
 
+    // entities are drawn in their creation order.
+    private static final Comparator<Entity> DRAW_ORDER = Comparator.comparingLong(Entity::getId);
+
+    // culling margin around the view, in pixels: edges and antialiasing go beyond the bounds.
+    private static final double CULL_MARGIN = 2;
+
+    // rendering hints, created once.
+    private static final Map<RenderingHints.Key, Object> HINTS = Map.of(
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+            RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+    private static final Map<RenderingHints.Key, Object> WINDOW_HINTS = Map.of(
+            RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
     private JFrame window;
     private final BufferedImage renderBuffer;
+    // direct access to the render buffer ARGB pixels.
+    private final Raster raster;
     private boolean displayHelp;
 
+    private final boolean culling;
+    // software rasterization of the entities (tiled or not), null to use Java2D.
+    private final TileRenderer tileRenderer;
+    private final List<Entity> drawList = new ArrayList<>();
+    private int[] drawBounds = new int[256];
+    private double frameAlpha = 1.0;
+    private final TileRenderer.Painter<Entity> entityPainter = this::paintEntity;
+    private final TileRenderer.ParticlePainter particlePainter = this::paintParticles;
+    private final List<ParticleEmitter> visibleEmitters = new ArrayList<>();
+    private final LightMap lightMap;
+    private long configVersion;
+    private final StaticLayer staticLayer;
+    // scene and static partition version last collected by the static layer.
+    private Scene collectedScene;
+    private long collectedStatics = -1;
+    private final List<Entity> visibleEntities = new ArrayList<>();
+    private final Consumer<Entity> visibleCollector = visibleEntities::add;
+    // per-frame counters
+    private int drawnEntities, culledEntities, drawnLights, culledLights, drawnParticles, drawCalls;
+    private final Profiler profiler;
+    // light jitter, apart from the simulation generators.
+    private final SplittableRandom random = RandomService.create("render");
+
     public Renderer(App app) {
         this.app = app;
-        Dimension bufferSize = app.getConfiguration().get("app.gfx.rendering.buffer.size", new Dimension(320, 200));
+        // benchmarks create a renderer without running the application.
+        profiler = app.getProfiler() != null ? app.getProfiler() : new Profiler(false);
+        Configuration config = app.getConfiguration();
+        Dimension bufferSize = config.get(Configuration.BUFFER_SIZE);
         renderBuffer = new BufferedImage(bufferSize.width, bufferSize.height, BufferedImage.TYPE_INT_ARGB);
+        raster = new Raster(renderBuffer);
+        culling = config.get(Configuration.CULLING);
+        if (config.get(Configuration.RASTER)) {
+            boolean tiled = config.get(Configuration.TILED);
+            int threads = config.get(Configuration.TILED_THREADS);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            tileRenderer = tiled
+                    ? new TileRenderer(renderBuffer, HINTS, config.get(Configuration.TILED_TILE_SIZE), threads)
+                    : new TileRenderer(renderBuffer, HINTS, 0, 1);
+            if (tiled) {
+                App.log(Renderer.class, App.LogLevel.INFO, "Tiled rendering: %d tiles on %d threads",
+                        tileRenderer.getTileCount(), threads);
+            }
+        } else {
+            tileRenderer = null;
+        }
+        lightMap = config.get(Configuration.LIGHTMAP)
+                ? new LightMap(config.get(Configuration.LIGHTMAP_SCALE))
+                : null;
+        configVersion = config.getVersion();
+        staticLayer = config.get(Configuration.STATIC_LAYER)
+                ? new StaticLayer(config.get(Configuration.STATIC_LAYER_TILE_SIZE), (tg, e) -> {
+                    drawEntity(tg, e, 1.0);
+                    e.draw(tg);
+                })
+                : null;
     }
 
     public void prepareWindow() {
         window = new JFrame(App.messages.getString("app.name"));
-        window.setPreferredSize(app.getConfiguration().get("app.window.size", new Dimension(640, 400)));
+        window.setPreferredSize(app.getConfiguration().get(Configuration.WINDOW_SIZE));
         window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         window.addComponentListener(new ComponentAdapter() {
             @Override
@@ -60,51 +152,254 @@ public class Renderer {
     }
 
     public void draw(Scene scene) {
+        draw(scene, 1.0);
+    }
+
+    /**
+     * Render the scene, entity positions being interpolated between the previous
+     * and the current simulation step with the <code>alpha</code> factor [0..1].
+     */
+    public void draw(Scene scene, double alpha) {
+        long start = profiler.start();
+        drawCalls = 0;
         Graphics2D g = renderBuffer.createGraphics();
+        Camera camera = scene.getActiveCamera();
+        double camX = camera != null ? camera.getInterpolatedX(alpha) : 0;
+        double camY = camera != null ? camera.getInterpolatedY(alpha) : 0;
         // clear buffer
-        g.setColor(Color.BLACK);
-        g.fillRect(0, 0, window.getWidth(), window.getHeight());
+        if (tileRenderer != null) {
+            raster.clear(0xFF000000);
+            // the raster works on whole pixels.
+            camX = Math.floor(camX);
+            camY = Math.floor(camY);
+            raster.setOrigin((int) camX, (int) camY);
+        } else {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, renderBuffer.getWidth(), renderBuffer.getHeight());
+        }
         // configure rendering
-        g.setRenderingHints(Map.of(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
-                RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
-                RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED));
+        g.setRenderingHints(HINTS);
 
-        // draw all entities.
-        scene.getEntities().stream().filter(Entity::isActive).forEach(e -> {
-            if (scene.getActiveCamera() != null) {
-                g.translate(-scene.getActiveCamera().getPosition().getX(),
-                        -scene.getActiveCamera().getPosition().getY());
-            }
+        // the whole render buffer is visible, even when the camera is smaller.
+        double viewW = Math.max(camera != null ? camera.getWidth() : 0, renderBuffer.getWidth());
+        double viewH = Math.max(camera != null ? camera.getHeight() : 0, renderBuffer.getHeight());
 
-            drawEntity(g, e);
-            e.draw(g);
-            if (scene.getActiveCamera() != null) {
-                g.translate(scene.getActiveCamera().getPosition().getX(), scene.getActiveCamera().getPosition().getY());
-            }
-        });
+        // draw all visible entities.
+        g.translate(-camX, -camY);
+        drawEntities(g, scene, alpha, camX, camY, viewW, viewH);
+        g.translate(camX, camY);
 
         // rendering lights
-        scene.getLights().stream().filter(Entity::isActive).forEach(l -> {
-            if (scene.getActiveCamera() != null) {
-                g.translate(-scene.getActiveCamera().getPosition().getX(),
-                        -scene.getActiveCamera().getPosition().getY());
+        drawnLights = 0;
+        culledLights = 0;
+        if (lightMap != null) {
+            long version = app.getConfiguration().getVersion();
+            if (version != configVersion) {
+                // hot reloaded scale, applied on the render thread.
+                if (app.getConfiguration().hasChanged(Configuration.LIGHTMAP_SCALE, configVersion)) {
+                    lightMap.setScale(app.getConfiguration().get(Configuration.LIGHTMAP_SCALE));
+                }
+                configVersion = version;
+            }
+            lightMap.begin(renderBuffer.getWidth(), renderBuffer.getHeight(), camX, camY);
+        } else {
+            g.translate(-camX, -camY);
+        }
+        List<Light> lights = scene.getActiveLights();
+        for (int i = 0; i < lights.size(); i++) {
+            Light l = lights.get(i);
+            if (culling && !isVisible(l, camX - CULL_MARGIN, camY - CULL_MARGIN, viewW + 2 * CULL_MARGIN,
+                    viewH + 2 * CULL_MARGIN)) {
+                culledLights++;
+                continue;
             }
-            drawLight(g, l);
-            if (scene.getActiveCamera() != null) {
-                g.translate(scene.getActiveCamera().getPosition().getX(), scene.getActiveCamera().getPosition().getY());
+            if (lightMap != null) {
+                lightMap.draw(l);
+            } else {
+                drawLight(g, l);
             }
-        });
+            drawnLights++;
+            drawCalls++;
+        }
+        if (lightMap != null) {
+            lightMap.end(g, renderBuffer.getWidth(), renderBuffer.getHeight());
+            drawCalls++;
+        } else {
+            g.translate(camX, camY);
+        }
 
         g.dispose();
-        drawToWindow(scene);
+        profiler.end(Profiler.Span.RENDER, start);
+        profiler.count(Profiler.Counter.ENTITIES, drawnEntities);
+        profiler.count(Profiler.Counter.CULLED_ENTITIES, culledEntities);
+        profiler.count(Profiler.Counter.LIGHTS, drawnLights);
+        profiler.count(Profiler.Counter.CULLED_LIGHTS, culledLights);
+        profiler.count(Profiler.Counter.PARTICLES, drawnParticles);
+        profiler.count(Profiler.Counter.DRAW_CALLS, drawCalls);
+        if (window != null) {
+            start = profiler.start();
+            drawToWindow(scene);
+            profiler.end(Profiler.Span.WINDOW, start);
+        }
+        profiler.frame();
+    }
+
+    /**
+     * Draw the active entities intersecting the camera view. Visible entities
+     * are retrieved from the scene spatial index (with a one cell margin for the
+     * interpolated positions), the full list being used when there is no index yet.
+     */
+    private void drawEntities(Graphics2D g, Scene scene, double alpha,
+            double viewX, double viewY, double viewW, double viewH) {
+        SpatialHash index = scene.getSpatialIndex();
+        List<Entity> entities = scene.getEntities();
+        visibleEntities.clear();
+        drawnEntities = 0;
+        culledEntities = 0;
+        if (culling && index != null && index.size() > 0) {
+            double margin = index.getCellSize();
+            index.query(viewX - margin, viewY - margin, viewW + 2 * margin, viewH + 2 * margin, visibleCollector);
+            culledEntities = index.size() - visibleEntities.size();
+            // the World is not in the index.
+            World world = scene.getWorld();
+            if (world.isActive() && scene.getEntity(world.getId()) == world) {
+                visibleEntities.add(world);
+            }
+            visibleEntities.sort(DRAW_ORDER);
+            entities = visibleEntities;
+        }
+        if (staticLayer != null) {
+            // static entities are drawn from the cached background tiles.
+            if (scene != collectedScene || scene.getStaticVersion() != collectedStatics) {
+                collectedScene = scene;
+                collectedStatics = scene.getStaticVersion();
+                staticLayer.collect(scene.getStaticEntities());
+            }
+            staticLayer.validate();
+            staticLayer.draw(g, viewX, viewY, viewW, viewH);
+            drawCalls += staticLayer.getDrawnTiles();
+        }
+        collectEmitters(scene, viewX - CULL_MARGIN, viewY - CULL_MARGIN, viewW + 2 * CULL_MARGIN,
+                viewH + 2 * CULL_MARGIN);
+        if (tileRenderer != null) {
+            drawTiled(entities, alpha, (int) viewX, (int) viewY);
+            return;
+        }
+        for (int i = 0; i < entities.size(); i++) {
+            Entity e = entities.get(i);
+            if (staticLayer != null && StaticLayer.accepts(e)) {
+                drawnEntities++;
+            } else if (e.isActive()) {
+                drawEntity(g, e, alpha);
+                e.draw(g);
+                drawnEntities++;
+                drawCalls++;
+            }
+        }
+        // particles are written straight into the pixels.
+        raster.setOrigin((int) Math.floor(viewX), (int) Math.floor(viewY));
+        drawnParticles = 0;
+        for (int i = 0; i < visibleEmitters.size(); i++) {
+            ParticleEmitter pe = visibleEmitters.get(i);
+            drawnParticles += raster.plotPoints(pe.x, pe.y, pe.life, particleAlpha(pe), pe.getCount(),
+                    pe.getParticleColor());
+            drawCalls++;
+        }
+    }
+
+    /**
+     * Collect the active emitters whose particles intersect the view.
+     */
+    private void collectEmitters(Scene scene, double viewX, double viewY, double viewW, double viewH) {
+        visibleEmitters.clear();
+        List<ParticleEmitter> emitters = scene.getEmitters();
+        for (int i = 0; i < emitters.size(); i++) {
+            ParticleEmitter pe = emitters.get(i);
+            if (pe.isActive() && (!culling || pe.intersects(viewX, viewY, viewW, viewH))) {
+                visibleEmitters.add(pe);
+            }
+        }
+    }
+
+    /**
+     * Software rasterization of the non-static entities of the list and of the
+     * particles, through the tile renderer.
+     */
+    private void drawTiled(List<Entity> entities, double alpha, int originX, int originY) {
+        drawList.clear();
+        for (int i = 0; i < entities.size(); i++) {
+            Entity e = entities.get(i);
+            if (staticLayer != null && StaticLayer.accepts(e)) {
+                drawnEntities++;
+            } else if (e.isActive()) {
+                int n = drawList.size();
+                if (drawBounds.length < (n + 1) * 4) {
+                    drawBounds = Arrays.copyOf(drawBounds, drawBounds.length * 2);
+                }
+                // edges are drawn one pixel beyond the size.
+                drawBounds[n * 4] = (int) e.getInterpolatedX(alpha);
+                drawBounds[n * 4 + 1] = (int) e.getInterpolatedY(alpha);
+                drawBounds[n * 4 + 2] = (int) e.getWidth() + 1;
+                drawBounds[n * 4 + 3] = (int) e.getHeight() + 1;
+                drawList.add(e);
+                drawnEntities++;
+            }
+        }
+        frameAlpha = alpha;
+        tileRenderer.draw(drawList, drawBounds, visibleEmitters, originX, originY, entityPainter, particlePainter);
+        drawnParticles = tileRenderer.getDrawnParticles();
+        drawCalls += tileRenderer.getPaintCount();
+    }
+
+    private void paintEntity(TileRenderer.Tile t, Entity e) {
+        drawEntity(t.getRaster(), e, frameAlpha);
+        if (!e.draw(t.getRaster())) {
+            // complex shapes are left to Java2D.
+            Graphics2D tg = t.getGraphics();
+            tg.setColor(e.getEdgeColor());
+            e.draw(tg);
+        }
+    }
+
+    /**
+     * Particles are alpha blended according to their remaining life.
+     */
+    private void paintParticles(TileRenderer.Tile t, ParticleEmitter pe, int[] particles, int from, int to) {
+        t.addParticles(t.getRaster().plotPoints(pe.x, pe.y, pe.life, particleAlpha(pe), particles, from, to,
+                pe.getParticleColor()));
+    }
+
+    private static float particleAlpha(ParticleEmitter pe) {
+        return (pe.getParticleColor() >>> 24) / (float) pe.getLifetime();
+    }
+
+    private static boolean isVisible(Light l, double viewX, double viewY, double viewW, double viewH) {
+        double x = l.getX(), y = l.getY(), w = l.getWidth(), h = l.getHeight();
+        switch (l.getLightType()) {
+            case POINT -> {
+                double r = l.getRadius() + Math.max(l.getVibration(), 0);
+                x -= r;
+                y -= r;
+                w = h = r * 2;
+            }
+            case SPOT -> {
+                // rotated around its position: use the bounding circle.
+                double r = Math.max(w, h);
+                x -= r;
+                y -= r;
+                w = h = r * 2;
+            }
+            default -> {
+            }
+        }
+        return x + w >= viewX && x <= viewX + viewW && y + h >= viewY && y <= viewY + viewH;
     }
 
     private void drawToWindow(Scene scene) {
         BufferStrategy bs = window.getBufferStrategy();
         Graphics2D g = (Graphics2D) bs.getDrawGraphics();
 
-        g.setRenderingHints(Map.of(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON,
-                RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON));
+        g.setRenderingHints(WINDOW_HINTS);
 
         int GAME_WIDTH = renderBuffer.getWidth();
         int GAME_HEIGHT = renderBuffer.getHeight();
@@ -141,12 +436,29 @@ public class Renderer {
         g.setColor(Color.ORANGE);
         g.setFont(g.getFont().deriveFont(12.0f));
         g.drawString(
-                "[ debug:%d | time:%s | mode:%s | update:%s | g:%.2f]".formatted(app.debug,
+                "[ debug:%d | time:%s | mode:%s | update:%s | g:%.2f | entities:%d/%d | lights:%d/%d | particles:%d | scripts:%d ]".formatted(
+                        app.debug,
                         Utils.getFormatedTime(app.getGameTime()),
                         app.mode,
                         app.pause ? "PAUSED" : "RUNNING",
-                        scene.getWorld().getGravity().getY()),
+                        scene.getWorld().getGravity().getY(),
+                        drawnEntities, drawnEntities + culledEntities,
+                        drawnLights, drawnLights + culledLights,
+                        drawnParticles,
+                        app.getScriptSystem() != null ? app.getScriptSystem().getScriptCount() : 0),
                 20, window.getHeight() - 20);
+        if (profiler.isEnabled()) {
+            // p50/p99/max over the last second, in ms.
+            StringBuilder spans = new StringBuilder("[ p50/p99/max ms");
+            for (Profiler.Span span : Profiler.Span.values()) {
+                spans.append(" | %s:%.2f/%.2f/%.2f".formatted(span.name().toLowerCase(),
+                        profiler.getP50(span) / 1e6, profiler.getP99(span) / 1e6, profiler.getMax(span) / 1e6));
+            }
+            g.drawString(spans.append(" ]").toString(), 20, window.getHeight() - 50);
+            g.drawString("[ gc:%.1f/s (%.1f ms/s) | alloc:%.2f MB/s | draw calls:%d ]".formatted(
+                    profiler.getGcRate(), profiler.getGcTimeRate(), profiler.getAllocationRate() / (1024 * 1024),
+                    drawCalls), 20, window.getHeight() - 35);
+        }
     }
 
     private void drawLight(Graphics2D g, Light e) {
@@ -162,8 +474,8 @@ public class Renderer {
                 Composite oldComposite = g.getComposite();
                 g.setPaint(paint);
                 g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1f));
-                g.fillOval((int) (e.getPosition().getX() - e.getRadius() + Math.random() * e.getVibration()),
-                        (int) (e.getPosition().getY() - e.getRadius() + Math.random() * e.getVibration()),
+                g.fillOval((int) (e.getPosition().getX() - e.getRadius() + random.nextDouble() * e.getVibration()),
+                        (int) (e.getPosition().getY() - e.getRadius() + random.nextDouble() * e.getVibration()),
                         (int) e.getRadius() * 2, (int) e.getRadius() * 2);
                 g.setComposite(oldComposite);
             }
@@ -193,16 +505,27 @@ public class Renderer {
         }
     }
 
-    private void drawEntity(Graphics2D g, Entity e) {
+    private void drawEntity(Graphics2D g, Entity e, double alpha) {
+        int x = (int) e.getInterpolatedX(alpha);
+        int y = (int) e.getInterpolatedY(alpha);
         if (e.getFillColor() != null) {
             g.setColor(e.getFillColor());
-            g.fillRect((int) e.getPosition().getX(), (int) e.getPosition().getY(), (int) e.getWidth(),
-                    (int) e.getHeight());
+            g.fillRect(x, y, (int) e.getWidth(), (int) e.getHeight());
         }
         if (e.getEdgeColor() != null) {
             g.setColor(e.getEdgeColor());
-            g.drawRect((int) e.getPosition().getX(), (int) e.getPosition().getY(), (int) e.getWidth(),
-                    (int) e.getHeight());
+            g.drawRect(x, y, (int) e.getWidth(), (int) e.getHeight());
+        }
+    }
+
+    private static void drawEntity(Raster r, Entity e, double alpha) {
+        int x = (int) e.getInterpolatedX(alpha);
+        int y = (int) e.getInterpolatedY(alpha);
+        if (e.getFillColor() != null) {
+            r.fillRect(x, y, (int) e.getWidth(), (int) e.getHeight(), e.getFillColor().getRGB());
+        }
+        if (e.getEdgeColor() != null) {
+            r.drawRect(x, y, (int) e.getWidth(), (int) e.getHeight(), e.getEdgeColor().getRGB());
         }
     }
 
@@ -221,7 +544,38 @@ public class Renderer {
         }
     }
 
+    /**
+     * Write the current render buffer to <code>[path]/frame_[tick]</code>,
+     * as a PNG image or as raw ARGB big-endian integers (<code>RAW</code>).
+     */
+    public void dumpFrame(Path path, int tick, String format) {
+        try {
+            Files.createDirectories(path);
+            if ("RAW".equalsIgnoreCase(format)) {
+                int[] pixels = ((DataBufferInt) renderBuffer.getRaster().getDataBuffer()).getData();
+                ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4);
+                bytes.asIntBuffer().put(pixels);
+                try (FileChannel channel = FileChannel.open(path.resolve("frame_%06d.argb".formatted(tick)),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel.write(bytes);
+                }
+            } else {
+                ImageIO.write(renderBuffer, "png", path.resolve("frame_%06d.png".formatted(tick)).toFile());
+            }
+        } catch (IOException e) {
+            App.log(Renderer.class, App.LogLevel.ERROR, "Unable to dump frame %d to %s: %s", tick, path,
+                    e.getMessage());
+        }
+    }
+
+    public BufferedImage getRenderBuffer() {
+        return renderBuffer;
+    }
+
     public void dispose() {
+        if (tileRenderer != null) {
+            tileRenderer.dispose();
+        }
         if (window != null) {
             window.dispose();
         }
@@ -230,4 +584,24 @@ public class Renderer {
     public void setDisplayHelp(boolean b) {
         this.displayHelp = b;
     }
+
+    public int getDrawnEntities() {
+        return drawnEntities;
+    }
+
+    public int getCulledEntities() {
+        return culledEntities;
+    }
+
+    public int getDrawnParticles() {
+        return drawnParticles;
+    }
+
+    public int getDrawnLights() {
+        return drawnLights;
+    }
+
+    public int getCulledLights() {
+        return culledLights;
+    }
 }
@@ -0,0 +1,244 @@
+package core.gfx;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.entity.Entity;
+import core.physic.PhysicType;
+
+/**
+ * Background layer caching the rendering of the static entities.
+ * <p>
+ * Active entities flagged {@link PhysicType#STATIC} (the World grid first) are
+ * pre-rendered into square tiles of <code>tileSize</code> pixels, in world
+ * coordinates. A tile is only re-rendered when one of the static entities
+ * covering it changes (position, size, colors or any other setter call), and
+ * only the tiles intersecting the view are blitted. Tiles out of view for a
+ * while are released.
+ * <p>
+ * As the layer is drawn before the other entities, static entities are
+ * always rendered in the background, and their <code>draw()</code> must not
+ * depend on time.
+ */
+public class StaticLayer {
+
+    /**
+     * Draw one entity into a tile graphics (translated to world coordinates).
+     */
+    @FunctionalInterface
+    public interface Painter {
+        void paint(Graphics2D g, Entity e);
+    }
+
+    private static class Tile {
+        BufferedImage image;
+        boolean dirty = true;
+        long lastUsed;
+    }
+
+    private static class Snapshot {
+        double x, y, w, h;
+        long version;
+    }
+
+    private static final int RELEASE_DELAY = 300;
+
+    private final int tileSize;
+    private final Painter painter;
+
+    private final Map<Entity, Snapshot> snapshots = new IdentityHashMap<>();
+    private final List<Entity> members = new ArrayList<>();
+
+    // tile grid covering the bounds of all the static entities.
+    private int originX, originY, cols, rows;
+    private Tile[] tiles = new Tile[0];
+    private boolean layoutDirty = true;
+
+    private long frame = 0;
+    private int drawnTiles, renderedTiles;
+
+    public StaticLayer(int tileSize, Painter painter) {
+        this.tileSize = Math.max(16, tileSize);
+        this.painter = painter;
+    }
+
+    public static boolean accepts(Entity e) {
+        return e.isActive() && e.getPhysicType() == PhysicType.STATIC;
+    }
+
+    /**
+     * Register the static entities of the given list not yet known by the layer.
+     */
+    public void collect(List<Entity> candidates) {
+        for (int i = 0; i < candidates.size(); i++) {
+            Entity e = candidates.get(i);
+            if (accepts(e) && !snapshots.containsKey(e)) {
+                Snapshot s = new Snapshot();
+                snapshot(s, e);
+                snapshots.put(e, s);
+                members.add(e);
+                invalidate(s);
+            }
+        }
+    }
+
+    /**
+     * Drop the entities which are no more static or active, and invalidate the
+     * tiles covered by the entities which changed since the last frame.
+     */
+    public void validate() {
+        for (int i = members.size() - 1; i >= 0; i--) {
+            Entity e = members.get(i);
+            Snapshot s = snapshots.get(e);
+            if (!accepts(e)) {
+                invalidate(s);
+                snapshots.remove(e);
+                members.remove(i);
+            } else if (s.version != e.getVersion() || s.x != e.getX() || s.y != e.getY()
+                    || s.w != e.getWidth() || s.h != e.getHeight()) {
+                invalidate(s);
+                snapshot(s, e);
+                invalidate(s);
+            }
+        }
+    }
+
+    /**
+     * Blit the tiles intersecting the view, re-rendering the dirty ones.
+     * <code>g</code> must already be translated to world coordinates.
+     */
+    public void draw(Graphics2D g, double viewX, double viewY, double viewW, double viewH) {
+        frame++;
+        drawnTiles = 0;
+        renderedTiles = 0;
+        if (layoutDirty) {
+            layout();
+        }
+        int minTx = Math.max(0, (int) Math.floor(viewX / tileSize) - originX);
+        int minTy = Math.max(0, (int) Math.floor(viewY / tileSize) - originY);
+        int maxTx = Math.min(cols - 1, (int) Math.floor((viewX + viewW) / tileSize) - originX);
+        int maxTy = Math.min(rows - 1, (int) Math.floor((viewY + viewH) / tileSize) - originY);
+        for (int ty = minTy; ty <= maxTy; ty++) {
+            for (int tx = minTx; tx <= maxTx; tx++) {
+                Tile t = tiles[ty * cols + tx];
+                if (t.dirty || t.image == null) {
+                    render(t, tx, ty);
+                }
+                t.lastUsed = frame;
+                g.drawImage(t.image, (originX + tx) * tileSize, (originY + ty) * tileSize, null);
+                drawnTiles++;
+            }
+        }
+        if (frame % 60 == 0) {
+            release();
+        }
+    }
+
+    private void render(Tile t, int tx, int ty) {
+        if (t.image == null) {
+            t.image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+        }
+        double wx = (originX + tx) * (double) tileSize;
+        double wy = (originY + ty) * (double) tileSize;
+        Graphics2D tg = t.image.createGraphics();
+        tg.setComposite(AlphaComposite.Clear);
+        tg.fillRect(0, 0, tileSize, tileSize);
+        tg.setComposite(AlphaComposite.SrcOver);
+        tg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        tg.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        tg.clipRect(0, 0, tileSize, tileSize);
+        tg.translate(-wx, -wy);
+        for (int i = 0; i < members.size(); i++) {
+            Entity e = members.get(i);
+            Snapshot s = snapshots.get(e);
+            if (s.x <= wx + tileSize && s.x + s.w + 1 >= wx && s.y <= wy + tileSize && s.y + s.h + 1 >= wy) {
+                painter.paint(tg, e);
+            }
+        }
+        tg.dispose();
+        t.dirty = false;
+        renderedTiles++;
+    }
+
+    /**
+     * Rebuild the tile grid to cover the bounds of all the static entities.
+     */
+    private void layout() {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Snapshot s : snapshots.values()) {
+            minX = Math.min(minX, s.x);
+            minY = Math.min(minY, s.y);
+            maxX = Math.max(maxX, s.x + s.w + 1);
+            maxY = Math.max(maxY, s.y + s.h + 1);
+        }
+        if (snapshots.isEmpty()) {
+            cols = rows = 0;
+        } else {
+            originX = (int) Math.floor(minX / tileSize);
+            originY = (int) Math.floor(minY / tileSize);
+            cols = (int) Math.floor(maxX / tileSize) - originX + 1;
+            rows = (int) Math.floor(maxY / tileSize) - originY + 1;
+        }
+        tiles = new Tile[cols * rows];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new Tile();
+        }
+        layoutDirty = false;
+    }
+
+    private void invalidate(Snapshot s) {
+        if (layoutDirty) {
+            return;
+        }
+        int minTx = (int) Math.floor(s.x / tileSize) - originX;
+        int minTy = (int) Math.floor(s.y / tileSize) - originY;
+        int maxTx = (int) Math.floor((s.x + s.w + 1) / tileSize) - originX;
+        int maxTy = (int) Math.floor((s.y + s.h + 1) / tileSize) - originY;
+        if (minTx < 0 || minTy < 0 || maxTx >= cols || maxTy >= rows) {
+            // out of the current grid.
+            layoutDirty = true;
+            return;
+        }
+        for (int ty = minTy; ty <= maxTy; ty++) {
+            for (int tx = minTx; tx <= maxTx; tx++) {
+                tiles[ty * cols + tx].dirty = true;
+            }
+        }
+    }
+
+    private void release() {
+        for (Tile t : tiles) {
+            if (t.image != null && frame - t.lastUsed > RELEASE_DELAY) {
+                t.image = null;
+                t.dirty = true;
+            }
+        }
+    }
+
+    private static void snapshot(Snapshot s, Entity e) {
+        s.x = e.getX();
+        s.y = e.getY();
+        s.w = e.getWidth();
+        s.h = e.getHeight();
+        s.version = e.getVersion();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    public int getDrawnTiles() {
+        return drawnTiles;
+    }
+
+    public int getRenderedTiles() {
+        return renderedTiles;
+    }
+}
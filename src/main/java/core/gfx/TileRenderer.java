@@ -0,0 +1,296 @@
+package core.gfx;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import core.entity.Entity;
+import core.entity.ParticleEmitter;
+
+/**
+ * Tiled rasterization of a sorted draw list.
+ * <p>
+ * The image is split into square tiles of <code>tileSize</code> pixels. Each
+ * entity of the draw list is binned into the tiles its bounding box covers,
+ * keeping the draw list order, and each particle into the tile of its pixel,
+ * keeping the emitters order. The tiles are then rendered in parallel on the
+ * worker pool: each one draws its own bins, entities then particles, through a
+ * {@link Raster} (and, for the complex shapes, a Java2D graphics) clipped to
+ * the tile. As every pixel is written by one tile only, in the draw list
+ * order, the output does not depend on the number of threads nor on the tile
+ * size.
+ * <p>
+ * Entities must not draw outside their bounding box (plus one pixel for the
+ * edges), as they are only drawn into the tiles covering it.
+ */
+public class TileRenderer {
+
+    /**
+     * Draw one item into a tile.
+     */
+    @FunctionalInterface
+    public interface Painter<T> {
+        void paint(Tile tile, T item);
+    }
+
+    /**
+     * Draw the particles <code>particles[from..to[</code> of an emitter into a
+     * tile.
+     */
+    @FunctionalInterface
+    public interface ParticlePainter {
+        void paint(Tile tile, ParticleEmitter emitter, int[] particles, int from, int to);
+    }
+
+    public static class Tile {
+        private final int x, y, w, h;
+        private final Raster raster;
+        private final BufferedImage image;
+        private final Map<RenderingHints.Key, Object> hints;
+        private Graphics2D g;
+        private int originX, originY;
+        private int[] bin = new int[64];
+        private int binSize;
+        // particle indices, and the runs of each emitter as (emitter, first) pairs.
+        private int[] particles = new int[256];
+        private int particleCount;
+        private int[] runs = new int[16];
+        private int runCount;
+        private int drawnParticles;
+        private int paints;
+
+        Tile(BufferedImage image, Map<RenderingHints.Key, Object> hints, int x, int y, int w, int h) {
+            this.image = image;
+            this.hints = hints;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.raster = new Raster(image);
+            this.raster.setClip(x, y, w, h);
+        }
+
+        public Raster getRaster() {
+            return raster;
+        }
+
+        /**
+         * @return a Java2D graphics clipped to the tile and translated like the
+         * raster, created on the first call of the frame.
+         */
+        public Graphics2D getGraphics() {
+            if (g == null) {
+                g = image.createGraphics();
+                g.setRenderingHints(hints);
+                g.clipRect(x, y, w, h);
+                g.translate(-originX, -originY);
+            }
+            return g;
+        }
+
+        public void addParticles(int n) {
+            drawnParticles += n;
+        }
+
+        private void add(int index) {
+            if (binSize == bin.length) {
+                bin = Arrays.copyOf(bin, binSize * 2);
+            }
+            bin[binSize++] = index;
+        }
+
+        private void addParticle(int emitter, int index) {
+            if (runCount == 0 || runs[(runCount - 1) * 2] != emitter) {
+                if (runCount * 2 == runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[runCount * 2] = emitter;
+                runs[runCount * 2 + 1] = particleCount;
+                runCount++;
+            }
+            if (particleCount == particles.length) {
+                particles = Arrays.copyOf(particles, particleCount * 2);
+            }
+            particles[particleCount++] = index;
+        }
+    }
+
+    private final Tile[] tiles;
+    private final int tileSize, cols, rows;
+    private ForkJoinPool pool;
+
+    // current frame
+    private List<Entity> entities;
+    private List<ParticleEmitter> emitters;
+    private Painter<Entity> entityPainter;
+    private ParticlePainter particlePainter;
+
+    /**
+     * @param tileSize the tile side, in pixels, or 0 for a single tile covering
+     *                 the whole image.
+     * @param threads  the number of rendering threads, the tiles being rendered
+     *                 on the caller thread if 1 or less.
+     */
+    public TileRenderer(BufferedImage image, Map<RenderingHints.Key, Object> hints, int tileSize, int threads) {
+        this.tileSize = tileSize > 0 ? tileSize : Math.max(image.getWidth(), image.getHeight());
+        cols = (image.getWidth() + this.tileSize - 1) / this.tileSize;
+        rows = (image.getHeight() + this.tileSize - 1) / this.tileSize;
+        tiles = new Tile[cols * rows];
+        for (int ty = 0; ty < rows; ty++) {
+            for (int tx = 0; tx < cols; tx++) {
+                tiles[ty * cols + tx] = new Tile(image, hints, tx * this.tileSize, ty * this.tileSize,
+                        Math.min(this.tileSize, image.getWidth() - tx * this.tileSize),
+                        Math.min(this.tileSize, image.getHeight() - ty * this.tileSize));
+            }
+        }
+        if (threads > 1 && tiles.length > 1) {
+            pool = new ForkJoinPool(threads, p -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("render-worker-" + t.getPoolIndex());
+                t.setDaemon(true);
+                return t;
+            }, null, false);
+        }
+    }
+
+    /**
+     * Bin the entities of the draw list and the particles, then render all the
+     * tiles.
+     *
+     * @param bounds  the pixel bounds of each entity in the draw list, as
+     *                x, y, w, h quadruplets in world coordinates.
+     * @param originX the world coordinates of the top-left pixel.
+     */
+    public void draw(List<Entity> entities, int[] bounds, List<ParticleEmitter> emitters, int originX, int originY,
+            Painter<Entity> entityPainter, ParticlePainter particlePainter) {
+        this.entities = entities;
+        this.emitters = emitters;
+        this.entityPainter = entityPainter;
+        this.particlePainter = particlePainter;
+        for (Tile t : tiles) {
+            t.originX = originX;
+            t.originY = originY;
+            t.raster.setOrigin(originX, originY);
+            t.binSize = 0;
+            t.particleCount = 0;
+            t.runCount = 0;
+            t.drawnParticles = 0;
+            t.paints = 0;
+        }
+        for (int i = 0; i < entities.size(); i++) {
+            int x0 = bounds[i * 4] - originX, y0 = bounds[i * 4 + 1] - originY;
+            int x1 = x0 + bounds[i * 4 + 2], y1 = y0 + bounds[i * 4 + 3];
+            int minTx = Math.max(0, Math.floorDiv(x0, tileSize));
+            int minTy = Math.max(0, Math.floorDiv(y0, tileSize));
+            int maxTx = Math.min(cols - 1, Math.floorDiv(x1, tileSize));
+            int maxTy = Math.min(rows - 1, Math.floorDiv(y1, tileSize));
+            for (int ty = minTy; ty <= maxTy; ty++) {
+                for (int tx = minTx; tx <= maxTx; tx++) {
+                    tiles[ty * cols + tx].add(i);
+                }
+            }
+        }
+        for (int k = 0; k < emitters.size(); k++) {
+            binParticles(k, emitters.get(k), originX, originY);
+        }
+        if (pool != null) {
+            pool.invoke(new TileTask(0, tiles.length));
+        } else {
+            for (Tile t : tiles) {
+                render(t);
+            }
+        }
+        this.entities = null;
+        this.emitters = null;
+    }
+
+    /**
+     * Bin each particle into the tile of its pixel, computed like
+     * {@link Raster#plotPoints(float[], float[], float[], float, int, int)}.
+     */
+    private void binParticles(int emitter, ParticleEmitter pe, int originX, int originY) {
+        final float[] x = pe.x, y = pe.y;
+        final float ox = originX, oy = originY;
+        int count = pe.getCount();
+        for (int i = 0; i < count; i++) {
+            float rx = x[i] - ox, ry = y[i] - oy;
+            if (rx < 0 || ry < 0) {
+                continue;
+            }
+            int tx = (int) rx / tileSize, ty = (int) ry / tileSize;
+            if (tx < cols && ty < rows) {
+                tiles[ty * cols + tx].addParticle(emitter, i);
+            }
+        }
+    }
+
+    private void render(Tile t) {
+        for (int i = 0; i < t.binSize; i++) {
+            entityPainter.paint(t, entities.get(t.bin[i]));
+        }
+        for (int r = 0; r < t.runCount; r++) {
+            int to = r + 1 < t.runCount ? t.runs[r * 2 + 3] : t.particleCount;
+            particlePainter.paint(t, emitters.get(t.runs[r * 2]), t.particles, t.runs[r * 2 + 1], to);
+        }
+        t.paints = t.binSize + t.runCount;
+        if (t.g != null) {
+            t.g.dispose();
+            t.g = null;
+        }
+    }
+
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+
+        TileTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+            } else {
+                render(tiles[from]);
+            }
+        }
+    }
+
+    public int getDrawnParticles() {
+        int n = 0;
+        for (Tile t : tiles) {
+            n += t.drawnParticles;
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of paint calls of the last frame, over all the tiles.
+     */
+    public int getPaintCount() {
+        int n = 0;
+        for (Tile t : tiles) {
+            n += t.paints;
+        }
+        return n;
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    public void dispose() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package core.io;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.entity.Entity;
+import core.physic.Material;
+import core.physic.PhysicType;
+
+/**
+ * Chunked world file: the entities of a level grouped by square regions
+ * (chunks) of <code>chunkSize</code> pixels, each one stored as a contiguous
+ * block of fixed-size binary records, so that a chunk can be read alone.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header:    int magic "CHNK", int version, double originX, originY, chunkSize, int cols, rows
+ * materials: int count, then for each one: UTF name, double friction, elasticity, density
+ * index:     for each chunk (row major): long offset, int count
+ * records:   float x, y, w, h, vx, vy, byte physicType, short material, int edgeARGB, fillARGB
+ * </pre>
+ * The file is read through a read-only memory mapping: {@link #read(int, int)}
+ * may be called from any thread, and is meant to run on a loader thread as
+ * it may page the file in.
+ */
+public class ChunkFile {
+
+    private static final int MAGIC = 0x43484E4B;
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 6 * 4 + 1 + 2 + 4 + 4;
+
+    /**
+     * The decoded entities of one chunk, ready to be applied to scene entities.
+     */
+    public static final class ChunkData {
+        public final int cx, cy, count;
+        public final float[] x, y, w, h, vx, vy;
+        public final PhysicType[] physicType;
+        public final Material[] material;
+        public final Color[] edgeColor, fillColor;
+
+        ChunkData(int cx, int cy, int count) {
+            this.cx = cx;
+            this.cy = cy;
+            this.count = count;
+            x = new float[count];
+            y = new float[count];
+            w = new float[count];
+            h = new float[count];
+            vx = new float[count];
+            vy = new float[count];
+            physicType = new PhysicType[count];
+            material = new Material[count];
+            edgeColor = new Color[count];
+            fillColor = new Color[count];
+        }
+
+        /**
+         * Set the state of the <code>i</code>th entity of the chunk into
+         * <code>e</code>.
+         */
+        public void apply(int i, Entity e) {
+            e.setPosition(x[i], y[i]);
+            e.setSize(w[i], h[i]);
+            e.setVelocity(vx[i], vy[i]);
+            e.setPhysicType(physicType[i]);
+            e.setMaterial(material[i]);
+            e.setEdgeColor(edgeColor[i]);
+            e.setFillColor(fillColor[i]);
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final double originX, originY, chunkSize;
+    private final int cols, rows;
+    private final Material[] materials;
+    private final int indexPosition;
+    // colors shared by the decoded chunks, only used by the reading thread.
+    private final Map<Integer, Color> colors = new HashMap<>();
+
+    private ChunkFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        ByteBuffer b = buffer.duplicate();
+        if (b.getInt() != MAGIC) {
+            throw new IOException("Not a chunk file");
+        }
+        int version = b.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported chunk file version " + version);
+        }
+        originX = b.getDouble();
+        originY = b.getDouble();
+        chunkSize = b.getDouble();
+        cols = b.getInt();
+        rows = b.getInt();
+        materials = new Material[b.getInt()];
+        for (int i = 0; i < materials.length; i++) {
+            byte[] name = new byte[b.getShort()];
+            b.get(name);
+            materials[i] = new Material(new String(name, StandardCharsets.UTF_8), b.getDouble(), b.getDouble(),
+                    b.getDouble());
+        }
+        indexPosition = b.position();
+    }
+
+    /**
+     * Map the chunk file into memory.
+     */
+    public static ChunkFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid once the channel is closed.
+            return new ChunkFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write the entities into a chunked world file of <code>cols</code> x
+     * <code>rows</code> chunks starting at (originX, originY). Each entity goes
+     * into the chunk of its position; the ones outside of the chunks are
+     * skipped.
+     */
+    public static void write(Path path, double originX, double originY, double chunkSize, int cols, int rows,
+            List<? extends Entity> entities) throws IOException {
+        List<List<Entity>> chunks = new ArrayList<>(cols * rows);
+        for (int i = 0; i < cols * rows; i++) {
+            chunks.add(new ArrayList<>());
+        }
+        Map<Material, Integer> materials = new LinkedHashMap<>();
+        for (Entity e : entities) {
+            int cx = (int) Math.floor((e.getX() - originX) / chunkSize);
+            int cy = (int) Math.floor((e.getY() - originY) / chunkSize);
+            if (cx >= 0 && cy >= 0 && cx < cols && cy < rows) {
+                chunks.get(cy * cols + cx).add(e);
+                materials.putIfAbsent(e.getMaterial(), materials.size());
+            }
+        }
+        int headerSize = 4 * 2 + 8 * 3 + 4 * 2 + 4;
+        for (Material m : materials.keySet()) {
+            headerSize += 2 + m.name().getBytes(StandardCharsets.UTF_8).length + 8 * 3;
+        }
+        int indexSize = cols * rows * (8 + 4);
+        long size = headerSize + indexSize + (long) entities.size() * RECORD_SIZE;
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            b.putInt(MAGIC).putInt(VERSION).putDouble(originX).putDouble(originY).putDouble(chunkSize)
+                    .putInt(cols).putInt(rows).putInt(materials.size());
+            for (Material m : materials.keySet()) {
+                byte[] name = m.name().getBytes(StandardCharsets.UTF_8);
+                b.putShort((short) name.length).put(name)
+                        .putDouble(m.friction()).putDouble(m.elasticity()).putDouble(m.density());
+            }
+            long offset = headerSize + indexSize;
+            for (List<Entity> chunk : chunks) {
+                b.putLong(offset).putInt(chunk.size());
+                offset += (long) chunk.size() * RECORD_SIZE;
+            }
+            for (List<Entity> chunk : chunks) {
+                for (Entity e : chunk) {
+                    b.putFloat((float) e.getX()).putFloat((float) e.getY())
+                            .putFloat((float) e.getWidth()).putFloat((float) e.getHeight())
+                            .putFloat((float) e.getVelocity().getX()).putFloat((float) e.getVelocity().getY())
+                            .put((byte) e.getPhysicType().ordinal())
+                            .putShort(materials.get(e.getMaterial()).shortValue())
+                            .putInt(argb(e.getEdgeColor())).putInt(argb(e.getFillColor()));
+                }
+            }
+            b.force();
+            // the remaining bytes reserved for the skipped entities are cut.
+            channel.truncate(offset);
+        }
+    }
+
+    private static int argb(Color c) {
+        return c != null ? c.getRGB() : 0;
+    }
+
+    private Color color(int argb) {
+        return argb == 0 ? null : colors.computeIfAbsent(argb, c -> new Color(c, true));
+    }
+
+    /**
+     * Decode the entities of the chunk. Must always be called from the same
+     * thread.
+     */
+    public ChunkData read(int cx, int cy) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(indexPosition + (cy * cols + cx) * (8 + 4));
+        long offset = b.getLong();
+        int count = b.getInt();
+        if (count < 0 || offset < indexPosition || offset + (long) count * RECORD_SIZE > buffer.capacity()) {
+            throw new IllegalStateException("Corrupt chunk %d,%d index: offset %d, count %d".formatted(cx, cy,
+                    offset, count));
+        }
+        ChunkData data = new ChunkData(cx, cy, count);
+        b.position((int) offset);
+        PhysicType[] types = PhysicType.values();
+        for (int i = 0; i < count; i++) {
+            data.x[i] = b.getFloat();
+            data.y[i] = b.getFloat();
+            data.w[i] = b.getFloat();
+            data.h[i] = b.getFloat();
+            data.vx[i] = b.getFloat();
+            data.vy[i] = b.getFloat();
+            data.physicType[i] = types[b.get()];
+            data.material[i] = materials[b.getShort()];
+            data.edgeColor[i] = color(b.getInt());
+            data.fillColor[i] = color(b.getInt());
+        }
+        return data;
+    }
+
+    /**
+     * @return the column of the chunk containing <code>x</code>, not clamped.
+     */
+    public int chunkX(double x) {
+        return (int) Math.floor((x - originX) / chunkSize);
+    }
+
+    public int chunkY(double y) {
+        return (int) Math.floor((y - originY) / chunkSize);
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
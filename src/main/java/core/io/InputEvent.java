@@ -0,0 +1,28 @@
+package core.io;
+
+/**
+ * A keyboard or mouse event, queued by the AWT listeners and applied by the
+ * {@link InputHandler} at the next tick.
+ *
+ * @param code    the key code or mouse button.
+ * @param x       the mouse position, for the mouse events.
+ * @param control true if the control key was down.
+ */
+public record InputEvent(Type type, int code, int x, int y, boolean control) {
+
+    public enum Type {
+        KEY_PRESSED, KEY_RELEASED, MOUSE_MOVED, MOUSE_PRESSED, MOUSE_RELEASED;
+
+        boolean isMouse() {
+            return this == MOUSE_MOVED || this == MOUSE_PRESSED || this == MOUSE_RELEASED;
+        }
+    }
+
+    public static InputEvent key(Type type, int code, boolean control) {
+        return new InputEvent(type, code, 0, 0, control);
+    }
+
+    public static InputEvent mouse(Type type, int button, int x, int y) {
+        return new InputEvent(type, button, x, y, false);
+    }
+}
@@ -1,5 +1,6 @@
 package core.io;
 
+import java.awt.GraphicsEnvironment;
 import java.awt.MouseInfo;
 import java.awt.Point;
 import java.awt.event.KeyEvent;
@@ -7,10 +8,31 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import core.App;
+import core.App.LogLevel;
 import core.scene.Scene;
+import core.utils.Configuration;
 
+/**
+ * Keyboard and mouse input.
+ * <p>
+ * The AWT listeners only queue the events (lock-free); they are applied on the
+ * game loop thread by {@link #update(double)} at the start of each tick, so the key
+ * and mouse state seen by the scene never changes during a step.
+ * <p>
+ * With <code>app.input.record</code> set, the applied events are written with
+ * their tick into an {@link InputTrace} file; with <code>app.input.replay</code>
+ * set, the live events are ignored and the ones of the trace are applied at
+ * the same ticks instead, e.g. headless in TEST mode, to reproduce a run. The
+ * elapsed time of each tick is recorded and replayed along with the events,
+ * so that a run of any loop mode replays the same steps.
+ */
 public class InputHandler implements KeyListener, MouseListener, MouseMotionListener {
 
     private static boolean[] keys = new boolean[1024];
@@ -19,49 +41,68 @@ public class InputHandler implements KeyListener, MouseListener, MouseMotionList
     private static Point mousePosition;
     private static boolean[] buttons;
 
+    private final ConcurrentLinkedQueue<InputEvent> queue = new ConcurrentLinkedQueue<>();
+    private final List<InputEvent> events = new ArrayList<>();
+    private long tick = 0;
+    private InputTrace.Recorder recorder;
+    private InputTrace.Player player;
+
     public InputHandler(App app) {
         this.app = app;
         mousePosition = new Point(0, 0);
-        buttons = new boolean[MouseInfo.getNumberOfButtons()];
+        buttons = new boolean[GraphicsEnvironment.isHeadless() ? 8 : MouseInfo.getNumberOfButtons()];
+        int tickRate = app.getConfiguration().get(Configuration.TICK_RATE);
+        String replay = app.getConfiguration().get(Configuration.INPUT_REPLAY);
+        String record = app.getConfiguration().get(Configuration.INPUT_RECORD);
+        try {
+            if (!replay.isBlank()) {
+                player = new InputTrace.Player(Path.of(replay));
+                if (player.getTickRate() != tickRate) {
+                    App.log(InputHandler.class, LogLevel.WARN, "Input trace recorded at %d ticks/s, replayed at %d",
+                            player.getTickRate(), tickRate);
+                }
+                App.log(InputHandler.class, LogLevel.INFO, "Replaying input from %s", replay);
+            } else if (!record.isBlank()) {
+                recorder = new InputTrace.Recorder(Path.of(record), tickRate);
+                App.log(InputHandler.class, LogLevel.INFO, "Recording input to %s", record);
+            }
+        } catch (IOException e) {
+            App.log(InputHandler.class, LogLevel.ERROR, "Unable to open the input trace: %s", e.getMessage());
+        }
     }
 
     @Override
     public void mouseDragged(MouseEvent e) {
-        mousePosition = e.getPoint();
+        queue.add(InputEvent.mouse(InputEvent.Type.MOUSE_MOVED, 0, e.getX(), e.getY()));
     }
 
     @Override
     public void mouseMoved(MouseEvent e) {
-        mousePosition = e.getPoint();
+        queue.add(InputEvent.mouse(InputEvent.Type.MOUSE_MOVED, 0, e.getX(), e.getY()));
     }
 
     @Override
     public void mouseClicked(MouseEvent e) {
-        mousePosition = e.getPoint();
     }
 
     @Override
     public void mousePressed(MouseEvent e) {
-
-        buttons[e.getButton()] = true;
-        mousePosition = e.getPoint();
+        queue.add(InputEvent.mouse(InputEvent.Type.MOUSE_PRESSED, e.getButton(), e.getX(), e.getY()));
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-
-        buttons[e.getButton()] = false;
-        mousePosition = e.getPoint();
+        queue.add(InputEvent.mouse(InputEvent.Type.MOUSE_RELEASED, e.getButton(), e.getX(), e.getY()));
     }
 
     @Override
     public void mouseEntered(MouseEvent e) {
-        mousePosition = e.getPoint();
+        queue.add(InputEvent.mouse(InputEvent.Type.MOUSE_MOVED, 0, e.getX(), e.getY()));
     }
 
     @Override
     public void mouseExited(MouseEvent e) {
-        mousePosition = e.getPoint();
+        queue.add(InputEvent.mouse(InputEvent.Type.MOUSE_MOVED, 0, e.getX(), e.getY()));
     }
 
     @Override
@@ -70,23 +111,91 @@ public class InputHandler implements KeyListener, MouseListener, MouseMotionList
 
     @Override
     public void keyPressed(KeyEvent e) {
-        keys[e.getKeyCode()] = true;
+        queue.add(InputEvent.key(InputEvent.Type.KEY_PRESSED, e.getKeyCode(), e.isControlDown()));
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        queue.add(InputEvent.key(InputEvent.Type.KEY_RELEASED, e.getKeyCode(), e.isControlDown()));
+    }
+
+    /**
+     * Start a new tick: apply the events queued since the previous one, or the
+     * replayed ones, on the game loop thread.
+     *
+     * @param elapsed the elapsed time of the tick, in ms.
+     * @return the elapsed time to run the tick with: the recorded one while
+     * replaying, else <code>elapsed</code>.
+     */
+    public double update(double elapsed) {
+        tick++;
+        events.clear();
+        InputEvent e;
+        while ((e = queue.poll()) != null) {
+            events.add(e);
+        }
+        if (player != null) {
+            events.clear();
+            try {
+                player.read(tick, events);
+                elapsed = player.getStep();
+            } catch (IOException ex) {
+                App.log(InputHandler.class, LogLevel.ERROR, "Unable to read the input trace: %s", ex.getMessage());
+                closePlayer();
+            }
+        }
+        for (int i = 0; i < events.size(); i++) {
+            apply(events.get(i));
+        }
+        if (recorder != null) {
+            try {
+                recorder.writeStep(tick, elapsed);
+                for (int i = 0; i < events.size(); i++) {
+                    recorder.write(tick, events.get(i));
+                }
+            } catch (IOException ex) {
+                App.log(InputHandler.class, LogLevel.ERROR, "Unable to record the input: %s", ex.getMessage());
+                closeRecorder();
+            }
+        }
+        return elapsed;
+    }
+
+    private void apply(InputEvent e) {
+        switch (e.type()) {
+            case KEY_PRESSED -> keyPressed(e.code());
+            case KEY_RELEASED -> keyReleased(e.code(), e.control());
+            case MOUSE_MOVED -> mousePosition = new Point(e.x(), e.y());
+            case MOUSE_PRESSED, MOUSE_RELEASED -> {
+                if (e.code() >= 0 && e.code() < buttons.length) {
+                    buttons[e.code()] = e.type() == InputEvent.Type.MOUSE_PRESSED;
+                }
+                mousePosition = new Point(e.x(), e.y());
+            }
+        }
+    }
+
+    private void keyPressed(int keyCode) {
+        if (keyCode >= 0 && keyCode < keys.length) {
+            keys[keyCode] = true;
+        }
 
         Scene scene = app.getCurrentScene();
         if (scene != null) {
-            scene.onKeyPressed(app, e.getKeyCode());
+            scene.onKeyPressed(app, keyCode);
         }
     }
 
-    @Override
-    public void keyReleased(KeyEvent e) {
-        keys[e.getKeyCode()] = false;
-        switch (e.getKeyCode()) {
+    private void keyReleased(int keyCode, boolean control) {
+        if (keyCode >= 0 && keyCode < keys.length) {
+            keys[keyCode] = false;
+        }
+        switch (keyCode) {
             case KeyEvent.VK_ESCAPE -> {
                 app.setExit(true);
             }
             case KeyEvent.VK_D -> {
-                if (e.isControlDown()) {
+                if (control) {
                     app.setDebug((app.getDebug() + 1) % 5);
                 }
             }
@@ -100,7 +209,48 @@ public class InputHandler implements KeyListener, MouseListener, MouseMotionList
 
         Scene scene = app.getCurrentScene();
         if (scene != null) {
-            scene.onKeyReleased(app, e.getKeyCode());
+            scene.onKeyReleased(app, keyCode);
+        }
+    }
+
+    /**
+     * @return the number of the current tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return true while replaying an input trace.
+     */
+    public boolean isReplaying() {
+        return player != null;
+    }
+
+    public void dispose() {
+        closeRecorder();
+        closePlayer();
+    }
+
+    private void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                App.log(InputHandler.class, LogLevel.ERROR, "Unable to close the input record: %s", e.getMessage());
+            }
+            recorder = null;
+        }
+    }
+
+    private void closePlayer() {
+        if (player != null) {
+            try {
+                player.close();
+            } catch (IOException e) {
+                App.log(InputHandler.class, LogLevel.ERROR, "Unable to close the input trace: %s", e.getMessage());
+            }
+            player = null;
         }
     }
 
@@ -0,0 +1,200 @@
+package core.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Per-tick input trace file, written while recording and read back to replay
+ * a run.
+ * <p>
+ * Layout (big endian): int magic "INPT", short version, int tick rate, then
+ * one record per event: varint ticks since the previous event, byte type
+ * (bit 7: control down), varint code, and for the mouse events varint x, y.
+ * A step record (type 0x7F, double ms) gives the elapsed time of the ticks
+ * from its own on, when it differs from the previous one: the fixed steps of
+ * <code>1/tickRate</code> s take no space, and the variable ones of the
+ * VARIABLE loop are replayed as they were run. Ticks without any event take
+ * no space.
+ */
+public final class InputTrace {
+
+    private static final int MAGIC = 0x494E5054;
+    private static final short VERSION = 2;
+    private static final int STEP = 0x7F;
+    private static final InputEvent.Type[] TYPES = InputEvent.Type.values();
+
+    private InputTrace() {
+    }
+
+    /**
+     * @return the fixed step of the tick rate, in ms, as run by the fixed
+     * timestep loops.
+     */
+    public static double stepMs(int tickRate) {
+        return (1_000_000_000L / tickRate) / 1_000_000.0;
+    }
+
+    public static final class Recorder implements Closeable {
+        private final DataOutputStream out;
+        private long lastTick = 0;
+        private double lastStep;
+
+        public Recorder(Path path, int tickRate) throws IOException {
+            lastStep = stepMs(tickRate);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(tickRate);
+        }
+
+        /**
+         * Write the elapsed time of the tick, if it differs from the previous
+         * one.
+         */
+        public void writeStep(long tick, double ms) throws IOException {
+            if (Double.doubleToLongBits(ms) == Double.doubleToLongBits(lastStep)) {
+                return;
+            }
+            writeVarInt(out, tick - lastTick);
+            lastTick = tick;
+            out.writeByte(STEP);
+            out.writeDouble(ms);
+            lastStep = ms;
+        }
+
+        public void write(long tick, InputEvent e) throws IOException {
+            writeVarInt(out, tick - lastTick);
+            lastTick = tick;
+            out.writeByte(e.type().ordinal() | (e.control() ? 0x80 : 0));
+            writeVarInt(out, e.code());
+            if (e.type().isMouse()) {
+                writeVarInt(out, e.x());
+                writeVarInt(out, e.y());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static final class Player implements Closeable {
+        private final DataInputStream in;
+        private final int tickRate;
+        private long nextTick = 0;
+        private InputEvent next;
+        private double nextStep = Double.NaN;
+        private double step;
+
+        public Player(Path path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException("Not an input trace: " + path);
+            }
+            short version = in.readShort();
+            if (version < 1 || version > VERSION) {
+                in.close();
+                throw new IOException("Unsupported input trace version " + version);
+            }
+            tickRate = in.readInt();
+            step = stepMs(tickRate);
+            advance();
+        }
+
+        private void advance() throws IOException {
+            try {
+                nextTick += readVarInt(in);
+                int type = in.readUnsignedByte();
+                if (type == STEP) {
+                    nextStep = in.readDouble();
+                    next = null;
+                    return;
+                }
+                nextStep = Double.NaN;
+                InputEvent.Type t = TYPES[type & 0x7F];
+                int code = (int) readVarInt(in);
+                if (t.isMouse()) {
+                    next = InputEvent.mouse(t, code, (int) readVarInt(in), (int) readVarInt(in));
+                } else {
+                    next = InputEvent.key(t, code, (type & 0x80) != 0);
+                }
+            } catch (EOFException e) {
+                next = null;
+                nextStep = Double.NaN;
+            }
+        }
+
+        /**
+         * Add the events of the tick (and of the earlier ones not read yet) to
+         * <code>events</code>, and read its elapsed time.
+         */
+        public void read(long tick, List<InputEvent> events) throws IOException {
+            while (!isDone() && nextTick <= tick) {
+                if (next != null) {
+                    events.add(next);
+                } else {
+                    step = nextStep;
+                }
+                advance();
+            }
+        }
+
+        /**
+         * @return the elapsed time of the last read tick, in ms.
+         */
+        public double getStep() {
+            return step;
+        }
+
+        /**
+         * @return true when all the events have been read.
+         */
+        public boolean isDone() {
+            return next == null && Double.isNaN(nextStep);
+        }
+
+        public int getTickRate() {
+            return tickRate;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, long v) throws IOException {
+        // zigzag: small negative mouse coordinates stay short.
+        v = (v << 1) ^ (v >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarInt(DataInputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
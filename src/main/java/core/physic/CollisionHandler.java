@@ -0,0 +1,13 @@
+package core.physic;
+
+import core.entity.Entity;
+
+/**
+ * Callback notified when an entity collides with another one.
+ * <code>(nx, ny)</code> is the contact normal, pointing from the entity
+ * toward the other one.
+ */
+@FunctionalInterface
+public interface CollisionHandler {
+    void onCollision(Entity entity, Entity other, double nx, double ny);
+}
@@ -1,39 +1,370 @@
 package core.physic;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
 import core.App;
+import core.entity.Archetype;
+import core.entity.Behavior;
 import core.entity.Entity;
+import core.entity.EntityStore;
+import core.entity.Light;
+import core.entity.ParticleEmitter;
 import core.entity.World;
 import core.scene.Scene;
+import core.utils.Configuration;
 
 public class PhysicSystem {
 
     private App app;
+    private double gameTime = 0;
+
+    private final boolean collision;
+    private final SpatialHash.PairConsumer resolver = this::resolveCollision;
+
+    private ForkJoinPool pool;
+    private EntityStore queriedStore;
+    private EntityStore.Query bodies;
+    private EntityStore.Query lights;
+    private final int chunkSize;
 
     public PhysicSystem(App app) {
         this.app = app;
+        this.collision = app.getConfiguration().get(Configuration.COLLISION);
+        this.chunkSize = Math.max(1, app.getConfiguration().get(Configuration.PARALLEL_CHUNK_SIZE));
+        if (app.getConfiguration().get(Configuration.PARALLEL)) {
+            int threads = app.getConfiguration().get(Configuration.PARALLEL_THREADS);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            this.pool = new ForkJoinPool(threads, p -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("physic-worker-" + t.getPoolIndex());
+                t.setDaemon(true);
+                return t;
+            }, null, false);
+            App.log(PhysicSystem.class, App.LogLevel.INFO, "Parallel integration on %d threads (chunk size:%d)",
+                    threads, chunkSize);
+        }
     }
 
-    public void update(Scene scene, long elapsed) {
+    public void update(Scene scene, double elapsed) {
 
-        app.time += elapsed;
+        gameTime += elapsed;
+        app.time = (long) gameTime;
 
-        scene.getEntities().stream().filter(Entity::isActive).forEach(e -> {
-            updateEntity(scene, e, elapsed);
-            e.update(elapsed);
-            constrainsEntity(scene.getWorld(), e);
-        });
-        scene.getLights().stream().filter(Entity::isActive).forEach(e -> {
+        scene.compact();
+        saveState(scene);
+        // all the entities are integrated before any update() callback, whatever
+        // the path; the static ones are neither integrated nor constrained.
+        if (pool != null) {
+            integrateParallel(scene, elapsed);
+        } else if (scene.getEntityStore() != null) {
+            List<Archetype> archetypes = bodies(scene.getEntityStore()).getArchetypes();
+            for (int i = 0; i < archetypes.size(); i++) {
+                Archetype a = archetypes.get(i);
+                updateArchetype(a, scene.getWorld(), elapsed, 0, a.size());
+            }
+            archetypes = lights.getArchetypes();
+            for (int i = 0; i < archetypes.size(); i++) {
+                Archetype a = archetypes.get(i);
+                updateArchetype(a, scene.getWorld(), elapsed, 0, a.size());
+            }
+        } else {
+            integrate(scene, scene.getDynamicEntities(), elapsed);
+            integrate(scene, scene.getActiveLights(), elapsed);
+        }
+        update(scene.getActiveEntities(), elapsed);
+        update(scene.getActiveLights(), elapsed);
+        if (scene.getSpatialIndex() != null) {
+            updateSpatialIndex(scene);
+            if (collision) {
+                scene.getSpatialIndex().forEachPair(resolver);
+            }
+        }
+        updateEmitters(scene, elapsed);
+        if (scene.getActiveCamera() != null) {
+            update(scene.getActiveCamera(), elapsed);
+        }
+        scene.update(null, elapsed);
+    }
+
+    private static void update(List<? extends Entity> active, double elapsed) {
+        for (int i = 0; i < active.size(); i++) {
+            update(active.get(i), elapsed);
+        }
+    }
+
+    /**
+     * Call the entity update() callback, then its behaviors.
+     */
+    private static void update(Entity e, double elapsed) {
+        e.update(elapsed);
+        List<Behavior> behaviors = e.getBehaviors();
+        for (int i = 0; i < behaviors.size(); i++) {
+            behaviors.get(i).update(e, elapsed);
+        }
+    }
+
+    private void updateEmitters(Scene scene, double elapsed) {
+        List<ParticleEmitter> emitters = scene.getEmitters();
+        for (int i = 0; i < emitters.size(); i++) {
+            ParticleEmitter pe = emitters.get(i);
+            if (pe.isActive()) {
+                pe.integrate(scene.getWorld(), elapsed);
+                update(pe, elapsed);
+            }
+        }
+    }
+
+    /**
+     * Integrate and constrain the entities, without calling their update().
+     */
+    private void integrate(Scene scene, List<? extends Entity> active, double elapsed) {
+        for (int i = 0; i < active.size(); i++) {
+            Entity e = active.get(i);
             updateEntity(scene, e, elapsed);
-            e.update(elapsed);
             constrainsEntity(scene.getWorld(), e);
-        });
+        }
+    }
+
+    /**
+     * @return the (cached) query of the archetypes of the active dynamic
+     * bodies, integrated and constrained into the World. The one of the
+     * other active lights constrained into the World is cached along.
+     */
+    private EntityStore.Query bodies(EntityStore store) {
+        if (store != queriedStore) {
+            queriedStore = store;
+            bodies = store.query(Archetype.ACTIVE | Archetype.BODY, 0);
+            lights = store.query(Archetype.ACTIVE | Archetype.COLLIDER | Archetype.LIGHT, Archetype.BODY);
+        }
+        return bodies;
+    }
+
+    /**
+     * Integrate and constrain the entities on the worker pool, the entity
+     * list (or each archetype of the store) being split into chunks of at most
+     * <code>chunkSize</code> consecutive entities. Each entity is only
+     * integrated from its own state, so the result does not depend on the
+     * number of threads. The Entity.update() callbacks are not called here.
+     */
+    private void integrateParallel(Scene scene, double elapsed) {
+        EntityStore store = scene.getEntityStore();
+        if (store != null) {
+            List<Archetype> archetypes = bodies(store).getArchetypes();
+            for (int i = 0; i < archetypes.size(); i++) {
+                Archetype a = archetypes.get(i);
+                pool.invoke(new IntegrationTask(scene, null, a, elapsed, 0, a.size()));
+            }
+            archetypes = lights.getArchetypes();
+            for (int i = 0; i < archetypes.size(); i++) {
+                Archetype a = archetypes.get(i);
+                pool.invoke(new IntegrationTask(scene, null, a, elapsed, 0, a.size()));
+            }
+        } else {
+            List<Entity> entities = scene.getDynamicEntities();
+            List<Light> lights = scene.getActiveLights();
+            pool.invoke(new IntegrationTask(scene, entities, null, elapsed, 0, entities.size()));
+            pool.invoke(new IntegrationTask(scene, lights, null, elapsed, 0, lights.size()));
+        }
+    }
+
+    private final class IntegrationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        // the tasks are never serialized.
+        private final transient Scene scene;
+        private final transient List<? extends Entity> entities;
+        private final transient Archetype archetype;
+        private final double elapsed;
+        private final int from, to;
+
+        IntegrationTask(Scene scene, List<? extends Entity> entities, Archetype archetype, double elapsed,
+                int from, int to) {
+            this.scene = scene;
+            this.entities = entities;
+            this.archetype = archetype;
+            this.elapsed = elapsed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new IntegrationTask(scene, entities, archetype, elapsed, from, middle),
+                        new IntegrationTask(scene, entities, archetype, elapsed, middle, to));
+            } else if (archetype != null) {
+                updateArchetype(archetype, scene.getWorld(), elapsed, from, to);
+            } else {
+                for (int i = from; i < to; i++) {
+                    Entity e = entities.get(i);
+                    updateEntity(scene, e, elapsed);
+                    constrainsEntity(scene.getWorld(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Integrate (dynamic bodies only) and constrain the [from, to[ slots of the
+     * archetype in one tight loop, without any allocation, virtual call nor
+     * per-entity flag test.
+     */
+    private void updateArchetype(Archetype s, World w, double elapsed, int from, int to) {
+        final double gx = w.getGravity().getX() * 0.01;
+        final double gy = w.getGravity().getY() * 0.01;
+        final double minX = w.getX(), minY = w.getY();
+        final double maxX = minX + w.getWidth(), maxY = minY + w.getHeight();
+        final double[] x = s.x, y = s.y, vx = s.vx, vy = s.vy, ww = s.w, hh = s.h;
+        final double[] friction = s.friction, elasticity = s.elasticity;
+        final boolean body = s.has(Archetype.BODY);
+        for (int i = from; i < to; i++) {
+            if (body) {
+                x[i] += (vx[i] + gx) * elapsed;
+                y[i] += (vy[i] + gy) * elapsed;
+                // reduce velocity
+                vx[i] *= friction[i];
+                vy[i] *= friction[i];
+            }
+            if (x[i] < minX) {
+                x[i] = minX;
+                vx[i] = -vx[i] * elasticity[i];
+            } else if (x[i] + ww[i] > maxX) {
+                x[i] = maxX - ww[i];
+                vx[i] = -vx[i] * elasticity[i];
+            }
+            if (y[i] < minY) {
+                y[i] = minY;
+                vy[i] = -vy[i] * elasticity[i];
+            } else if (y[i] + hh[i] > maxY) {
+                y[i] = maxY - hh[i];
+                vy[i] = -vy[i] * elasticity[i];
+            }
+        }
+    }
+
+    /**
+     * Broadphase: update the scene spatial index with the active non static
+     * entities, the static ones being inserted by the scene when they are
+     * added or moved. It is used for the collision pairs and by the Renderer
+     * for view culling.
+     */
+    private void updateSpatialIndex(Scene scene) {
+        SpatialHash index = scene.getSpatialIndex();
+        List<Entity> entities = scene.getDynamicEntities();
+        index.beginUpdate();
+        for (int i = 0; i < entities.size(); i++) {
+            index.update(entities.get(i));
+        }
+        index.endUpdate();
+    }
+
+    /**
+     * Separate the two overlapping AABB along the axis of least penetration, and
+     * apply an impulse based on the materials elasticity, the mass being
+     * computed from the material density and the entity area.
+     */
+    private void resolveCollision(Entity a, Entity b) {
+        if (a.getPhysicType() == PhysicType.NONE || b.getPhysicType() == PhysicType.NONE) {
+            return;
+        }
+        boolean aDynamic = a.getPhysicType() == PhysicType.DYNAMIC;
+        boolean bDynamic = b.getPhysicType() == PhysicType.DYNAMIC;
+        if (!aDynamic && !bDynamic) {
+            return;
+        }
+        double ax = a.getX(), ay = a.getY(), aw = a.getWidth(), ah = a.getHeight();
+        double bx = b.getX(), by = b.getY(), bw = b.getWidth(), bh = b.getHeight();
+        double ox = Math.min(ax + aw, bx + bw) - Math.max(ax, bx);
+        double oy = Math.min(ay + ah, by + bh) - Math.max(ay, by);
+        if (ox <= 0 || oy <= 0) {
+            return;
+        }
+        double nx = 0, ny = 0, penetration;
+        if (ox < oy) {
+            nx = (ax + aw * 0.5) < (bx + bw * 0.5) ? 1 : -1;
+            penetration = ox;
+        } else {
+            ny = (ay + ah * 0.5) < (by + bh * 0.5) ? 1 : -1;
+            penetration = oy;
+        }
+        double invMassA = aDynamic ? inverseMass(a) : 0;
+        double invMassB = bDynamic ? inverseMass(b) : 0;
+        double invMassSum = invMassA + invMassB;
+        if (invMassSum == 0) {
+            return;
+        }
+        // positional correction; the static side is never touched, so that its
+        // version (and the StaticLayer tiles under it) stays unchanged.
+        double ca = penetration * invMassA / invMassSum;
+        double cb = penetration * invMassB / invMassSum;
+        if (aDynamic) {
+            a.setPosition(ax - nx * ca, ay - ny * ca);
+        }
+        if (bDynamic) {
+            b.setPosition(bx + nx * cb, by + ny * cb);
+        }
+
+        // impulse, only if the entities are moving toward each other
+        double avx = a.getVelocity().getX(), avy = a.getVelocity().getY();
+        double bvx = b.getVelocity().getX(), bvy = b.getVelocity().getY();
+        double vn = (bvx - avx) * nx + (bvy - avy) * ny;
+        if (vn < 0) {
+            double e = Math.min(a.getMaterial().elasticity(), b.getMaterial().elasticity());
+            double j = -(1 + e) * vn / invMassSum;
+            if (aDynamic) {
+                a.setVelocity(avx - j * invMassA * nx, avy - j * invMassA * ny);
+            }
+            if (bDynamic) {
+                b.setVelocity(bvx + j * invMassB * nx, bvy + j * invMassB * ny);
+            }
+        }
+        a.onCollision(b, nx, ny);
+        // the first callback may have released one of the entities.
+        if (!a.isReleased() && !b.isReleased()) {
+            b.onCollision(a, -nx, -ny);
+        }
+    }
+
+    public void dispose() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static double inverseMass(Entity e) {
+        double mass = e.getMaterial().density() * e.getWidth() * e.getHeight();
+        return mass > 0 ? 1.0 / mass : 0;
+    }
+
+    /**
+     * Keep the current position of the active non static entities, lights and
+     * camera as the "previous" state for render interpolation (the static ones
+     * are drawn at their position).
+     */
+    public void saveState(Scene scene) {
+        if (scene.getEntityStore() != null) {
+            scene.getEntityStore().savePreviousPositions();
+        } else {
+            List<Entity> entities = scene.getDynamicEntities();
+            for (int i = 0; i < entities.size(); i++) {
+                entities.get(i).savePreviousPosition();
+            }
+            List<Light> lights = scene.getActiveLights();
+            for (int i = 0; i < lights.size(); i++) {
+                lights.get(i).savePreviousPosition();
+            }
+        }
         if (scene.getActiveCamera() != null) {
-            scene.getActiveCamera().update(elapsed);
+            scene.getActiveCamera().savePreviousPosition();
         }
-        scene.update(null, elapsed);
     }
 
-    public void updateEntity(Scene scene, Entity e, long elapsed) {
+    public void updateEntity(Scene scene, Entity e, double elapsed) {
         if (e.getPhysicType().equals(PhysicType.DYNAMIC)) {
             e.setPosition(
                     (e.getPosition().getX() + ((e.getVelocity().getX() + (scene.getWorld().getGravity().getX() * 0.01)) * elapsed)),
@@ -0,0 +1,405 @@
+package core.physic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import core.entity.Entity;
+
+/**
+ * Uniform grid spatial hash.
+ * <p>
+ * Each entity is registered into all the cells its bounding box covers. Cells
+ * are hashed into a power-of-two bucket table (growing with the number of
+ * entities), so the world does not need to be bounded. The structure is updated
+ * incrementally: an entity is only moved between buckets when the range of
+ * cells it covers changes.
+ * <p>
+ * Entities covering more than {@link #MAX_CELLS} cells (e.g. a large
+ * platform) are kept apart in a "large" list and tested directly.
+ * <p>
+ * Fixed entities (the static ones) are inserted once with
+ * {@link #updateFixed(Entity)}, and only updated again when they move: they are
+ * not swept by {@link #endUpdate()}, and {@link #forEachPair} only iterates
+ * the moving entities, testing them against the fixed ones of their cells.
+ * <p>
+ * Entities removed by a collision callback during {@link #forEachPair} are not
+ * reported anymore, and leave the hash once the iteration is over; fixed
+ * entities updated by a callback are moved once the iteration is over.
+ */
+public class SpatialHash {
+
+    /**
+     * Broadphase record of one entity: its bounding box and covered cell range
+     * at the last update, and the stamp of the last update it was seen.
+     */
+    static class Proxy {
+        Entity entity;
+        int index;
+        double x0, y0, x1, y1;
+        int minCx, minCy, maxCx, maxCy;
+        long stamp;
+        boolean inserted;
+        boolean large;
+        boolean fixed;
+        // removed during forEachPair(), waiting for the end of the iteration.
+        boolean removed;
+    }
+
+    private static final int MAX_CELLS = 64;
+
+    private final double cellSize;
+    private final double invCellSize;
+    private int mask;
+    private Proxy[][] buckets;
+    private int[] bucketSizes;
+
+    private final Map<Entity, Proxy> proxies = new IdentityHashMap<>();
+    // moving and fixed proxies, Proxy.index being the position in its own list.
+    private final List<Proxy> proxyList = new ArrayList<>();
+    private final List<Proxy> fixedList = new ArrayList<>();
+    private final List<Proxy> largeList = new ArrayList<>();
+    // removed proxies, reused by the next insertions.
+    private final ArrayDeque<Proxy> freeProxies = new ArrayDeque<>();
+    private long stamp = 0;
+    private boolean iterating = false;
+    // removals and fixed updates requested during forEachPair(), in their order.
+    private final List<Entity> pendingEntities = new ArrayList<>();
+    private final List<Boolean> pendingFixed = new ArrayList<>();
+
+    public SpatialHash(double cellSize, int bucketCount) {
+        this.cellSize = cellSize;
+        this.invCellSize = 1.0 / cellSize;
+        int size = Integer.highestOneBit(Math.max(bucketCount, 16) - 1) << 1;
+        this.mask = size - 1;
+        this.buckets = new Proxy[size][];
+        this.bucketSizes = new int[size];
+    }
+
+    /**
+     * Start a new update pass. Entities not updated before {@link #endUpdate()}
+     * are removed from the hash.
+     */
+    public void beginUpdate() {
+        stamp++;
+    }
+
+    /**
+     * Insert or move the entity according to its current bounding box, as a
+     * moving entity.
+     */
+    public void update(Entity e) {
+        Proxy p = proxy(e, false);
+        p.stamp = stamp;
+        place(p, e);
+    }
+
+    /**
+     * Insert or move the entity according to its current bounding box, as a
+     * fixed entity: it stays in the hash until it is removed or updated as a
+     * moving one.
+     */
+    public void updateFixed(Entity e) {
+        if (iterating) {
+            pendingEntities.add(e);
+            pendingFixed.add(Boolean.TRUE);
+            return;
+        }
+        place(proxy(e, true), e);
+    }
+
+    /**
+     * @return the proxy of the entity, created or moved into the moving or
+     * fixed list.
+     */
+    private Proxy proxy(Entity e, boolean fixed) {
+        Proxy p = proxies.get(e);
+        if (p == null) {
+            p = freeProxies.isEmpty() ? new Proxy() : freeProxies.pop();
+            p.entity = e;
+            p.fixed = fixed;
+            List<Proxy> list = fixed ? fixedList : proxyList;
+            p.index = list.size();
+            proxies.put(e, p);
+            list.add(p);
+            if (size() > buckets.length) {
+                rehash(buckets.length * 2);
+            }
+        } else if (p.fixed != fixed) {
+            detach(p);
+            p.fixed = fixed;
+            List<Proxy> list = fixed ? fixedList : proxyList;
+            p.index = list.size();
+            list.add(p);
+        }
+        return p;
+    }
+
+    private void place(Proxy p, Entity e) {
+        p.x0 = e.getX();
+        p.y0 = e.getY();
+        p.x1 = p.x0 + e.getWidth();
+        p.y1 = p.y0 + e.getHeight();
+        int minCx = cell(p.x0), minCy = cell(p.y0);
+        int maxCx = cell(p.x1), maxCy = cell(p.y1);
+        if (p.inserted && minCx == p.minCx && minCy == p.minCy && maxCx == p.maxCx && maxCy == p.maxCy) {
+            return;
+        }
+        if (p.inserted) {
+            unlink(p);
+        }
+        p.minCx = minCx;
+        p.minCy = minCy;
+        p.maxCx = maxCx;
+        p.maxCy = maxCy;
+        link(p);
+    }
+
+    /**
+     * Remove all the moving entities which were not updated during the current
+     * pass.
+     */
+    public void endUpdate() {
+        for (int i = proxyList.size() - 1; i >= 0; i--) {
+            Proxy p = proxyList.get(i);
+            if (p.stamp != stamp) {
+                remove(p.entity);
+            }
+        }
+    }
+
+    public void remove(Entity e) {
+        if (iterating) {
+            // the buckets and the proxy lists are being iterated.
+            Proxy p = proxies.get(e);
+            if (p != null) {
+                p.removed = true;
+            }
+            pendingEntities.add(e);
+            pendingFixed.add(Boolean.FALSE);
+            return;
+        }
+        Proxy p = proxies.remove(e);
+        if (p == null) {
+            return;
+        }
+        if (p.inserted) {
+            unlink(p);
+        }
+        detach(p);
+        p.entity = null;
+        p.inserted = false;
+        p.large = false;
+        p.fixed = false;
+        p.removed = false;
+        freeProxies.push(p);
+    }
+
+    /**
+     * Remove the proxy from its moving or fixed list.
+     */
+    private void detach(Proxy p) {
+        List<Proxy> list = p.fixed ? fixedList : proxyList;
+        int last = list.size() - 1;
+        Proxy moved = list.get(last);
+        list.set(p.index, moved);
+        moved.index = p.index;
+        list.remove(last);
+    }
+
+    /**
+     * Call the consumer once for each pair of entities whose bounding boxes
+     * (as of their last update) overlap. A pair is only reported in the
+     * top-left cell of the two entities cell ranges overlap, so that entities
+     * spanning several cells are not reported twice. Pairs of two fixed
+     * entities are not reported.
+     * <p>
+     * The consumer may remove entities from the hash: they are skipped for
+     * the rest of the iteration and removed at its end.
+     */
+    public void forEachPair(PairConsumer consumer) {
+        iterating = true;
+        try {
+            for (int i = 0; i < proxyList.size(); i++) {
+                Proxy a = proxyList.get(i);
+                if (a.large) {
+                    // large entities are tested against all the others.
+                    for (int k = 0; k < proxyList.size() && !a.removed; k++) {
+                        Proxy o = proxyList.get(k);
+                        if (o != a && !o.removed && (!o.large || o.index > a.index) && overlaps(a, o)) {
+                            consumer.accept(a.entity, o.entity);
+                        }
+                    }
+                    for (int k = 0; k < fixedList.size() && !a.removed; k++) {
+                        Proxy o = fixedList.get(k);
+                        if (!o.removed && overlaps(a, o)) {
+                            consumer.accept(a.entity, o.entity);
+                        }
+                    }
+                    continue;
+                }
+                // large fixed entities are not in the buckets.
+                for (int k = 0; k < largeList.size() && !a.removed; k++) {
+                    Proxy o = largeList.get(k);
+                    if (o.fixed && !o.removed && overlaps(a, o)) {
+                        consumer.accept(a.entity, o.entity);
+                    }
+                }
+                for (int cy = a.minCy; cy <= a.maxCy && !a.removed; cy++) {
+                    for (int cx = a.minCx; cx <= a.maxCx && !a.removed; cx++) {
+                        int b = bucket(cx, cy);
+                        Proxy[] bucket = buckets[b];
+                        int size = bucketSizes[b];
+                        for (int k = 0; k < size && !a.removed; k++) {
+                            Proxy o = bucket[k];
+                            if (o.removed || !o.fixed && o.index <= a.index
+                                    || cx != Math.max(a.minCx, o.minCx) || cy != Math.max(a.minCy, o.minCy)
+                                    || cx > o.maxCx || cy > o.maxCy
+                                    || !overlaps(a, o)) {
+                                continue;
+                            }
+                            consumer.accept(a.entity, o.entity);
+                        }
+                    }
+                }
+            }
+        } finally {
+            iterating = false;
+            for (int i = 0; i < pendingEntities.size(); i++) {
+                Entity e = pendingEntities.get(i);
+                if (pendingFixed.get(i)) {
+                    updateFixed(e);
+                } else {
+                    remove(e);
+                }
+            }
+            pendingEntities.clear();
+            pendingFixed.clear();
+        }
+    }
+
+    private static boolean overlaps(Proxy a, Proxy o) {
+        return a.x1 > o.x0 && o.x1 > a.x0 && a.y1 > o.y0 && o.y1 > a.y0;
+    }
+
+    /**
+     * Call the consumer for each entity whose cells intersect the given area.
+     * An entity is reported only once, in the first cell of the area it covers.
+     */
+    public void query(double x, double y, double w, double h, Consumer<Entity> consumer) {
+        for (int i = 0; i < largeList.size(); i++) {
+            Proxy o = largeList.get(i);
+            if (o.x1 >= x && x + w >= o.x0 && o.y1 >= y && y + h >= o.y0) {
+                consumer.accept(o.entity);
+            }
+        }
+        int minCx = cell(x), minCy = cell(y), maxCx = cell(x + w), maxCy = cell(y + h);
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int b = bucket(cx, cy);
+                Proxy[] bucket = buckets[b];
+                int size = bucketSizes[b];
+                for (int k = 0; k < size; k++) {
+                    Proxy o = bucket[k];
+                    if (cx < o.minCx || cx > o.maxCx || cy < o.minCy || cy > o.maxCy
+                            || cx != Math.max(minCx, o.minCx) || cy != Math.max(minCy, o.minCy)) {
+                        continue;
+                    }
+                    consumer.accept(o.entity);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return proxyList.size() + fixedList.size();
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v * invCellSize);
+    }
+
+    private int bucket(int cx, int cy) {
+        int h = cx * 0x9E3779B1 ^ cy * 0x85EBCA77;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Grow the bucket table to keep a low number of entities per bucket.
+     */
+    private void rehash(int size) {
+        buckets = new Proxy[size][];
+        bucketSizes = new int[size];
+        mask = size - 1;
+        for (Proxy p : proxyList) {
+            if (p.inserted && !p.large) {
+                link(p);
+            }
+        }
+        for (Proxy p : fixedList) {
+            if (p.inserted && !p.large) {
+                link(p);
+            }
+        }
+    }
+
+    private void link(Proxy p) {
+        if ((long) (p.maxCx - p.minCx + 1) * (p.maxCy - p.minCy + 1) > MAX_CELLS) {
+            p.large = true;
+            p.inserted = true;
+            largeList.add(p);
+            return;
+        }
+        p.large = false;
+        for (int cy = p.minCy; cy <= p.maxCy; cy++) {
+            for (int cx = p.minCx; cx <= p.maxCx; cx++) {
+                int b = bucket(cx, cy);
+                Proxy[] bucket = buckets[b];
+                if (bucket == null) {
+                    bucket = buckets[b] = new Proxy[4];
+                } else if (bucketSizes[b] == bucket.length) {
+                    bucket = buckets[b] = Arrays.copyOf(bucket, bucket.length * 2);
+                }
+                bucket[bucketSizes[b]++] = p;
+            }
+        }
+        p.inserted = true;
+    }
+
+    private void unlink(Proxy p) {
+        if (p.large) {
+            largeList.remove(p);
+            p.inserted = false;
+            return;
+        }
+        for (int cy = p.minCy; cy <= p.maxCy; cy++) {
+            for (int cx = p.minCx; cx <= p.maxCx; cx++) {
+                int b = bucket(cx, cy);
+                Proxy[] bucket = buckets[b];
+                int size = bucketSizes[b];
+                for (int k = 0; k < size; k++) {
+                    if (bucket[k] == p) {
+                        bucket[k] = bucket[size - 1];
+                        bucket[size - 1] = null;
+                        bucketSizes[b]--;
+                        break;
+                    }
+                }
+            }
+        }
+        p.inserted = false;
+    }
+
+    @FunctionalInterface
+    public interface PairConsumer {
+        void accept(Entity a, Entity b);
+    }
+}
@@ -1,29 +1,544 @@
 package core.scene;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 import core.entity.Camera;
 import core.entity.Entity;
+import core.entity.EntityListener;
+import core.entity.EntityStore;
 import core.entity.Light;
+import core.entity.ParticleEmitter;
 import core.entity.World;
+import core.physic.PhysicType;
+import core.physic.SpatialHash;
 
-public class AbstractScene {
+public class AbstractScene implements EntityListener {
 
     protected final List<Entity> entities = new ArrayList<>();
     protected final List<Light> lights = new ArrayList<>();
+    protected final List<ParticleEmitter> emitters = new ArrayList<>();
+
+    // lookup indexes, maintained on add/remove/rename/tag changes.
+    private final Map<String, Entity> entitiesByName = new HashMap<>();
+    private final Map<Long, Entity> entitiesById = new HashMap<>();
+    private final Map<String, List<Entity>> entitiesByTag = new HashMap<>();
+    private final Map<String, List<Entity>> entitiesByTagViews = new HashMap<>();
+
+    // active entities and lights, and active static and non static entities,
+    // in their activation order: maintained in place on add/acquire/release
+    // and on the active or physic type changes, the entities leaving them being
+    // swept on the next access.
+    private final List<Entity> activeEntities = new ArrayList<>();
+    private final List<Light> activeLights = new ArrayList<>();
+    private final List<Entity> staticEntities = new ArrayList<>();
+    private final List<Entity> dynamicEntities = new ArrayList<>();
+    private final List<Entity> activeEntitiesView = Collections.unmodifiableList(activeEntities);
+    private final List<Light> activeLightsView = Collections.unmodifiableList(activeLights);
+    private final List<Entity> staticEntitiesView = Collections.unmodifiableList(staticEntities);
+    private final List<Entity> dynamicEntitiesView = Collections.unmodifiableList(dynamicEntities);
+    private static final int IN_ACTIVE = 1, IN_STATIC = 2, IN_DYNAMIC = 4;
+    // partitions listing each entity (IN_ACTIVE, IN_STATIC, IN_DYNAMIC bits).
+    private final Map<Entity, Integer> partitionMembers = new IdentityHashMap<>();
+    private boolean partitionsSweep = false;
+    private boolean partitionsRebuild = false;
+    // incremented when entities join the static partition.
+    private long staticVersion = 0;
+
+    // recycled entities, per concrete type.
+    private final Map<Class<?>, ArrayDeque<Entity>> pools = new HashMap<>();
+    // number of released entities still in the entities/lights lists, until the next compact().
+    private int pendingReleases = 0;
 
     protected List<Camera> cameras = new ArrayList<>();
     protected Camera activeCamera;
 
     protected World world = new World("earth", 320, 200);
 
+    protected EntityStore entityStore;
+    // spatial index of the active entities but the World, shared with the Renderer: the static
+    // ones are inserted by the scene when they join the static partition or
+    // move, the others are updated by the PhysicSystem at each step.
+    protected SpatialHash spatialIndex;
+
     public void addLight(Light light) {
         lights.add(light);
+        if (entityStore != null) {
+            entityStore.attach(light);
+        }
+        index(light);
+        updatePartitions(light);
+    }
+
+    /**
+     * Add a particle emitter, updated by the PhysicSystem and drawn by the
+     * Renderer after the entities. It is not part of the entities list.
+     */
+    public void addEmitter(ParticleEmitter emitter) {
+        emitters.add(emitter);
+        index(emitter);
     }
 
     public void addEntity(Entity e) {
         entities.add(e);
+        if (entityStore != null) {
+            entityStore.attach(e);
+        }
+        index(e);
+        updatePartitions(e);
+    }
+
+    /**
+     * Remove the entity (or light) from the scene and from all its indexes.
+     */
+    public void removeEntity(Entity e) {
+        if (e.isReleased()) {
+            return;
+        }
+        boolean removed = (e instanceof Light && lights.remove(e))
+                || (e instanceof ParticleEmitter && emitters.remove(e))
+                || entities.remove(e);
+        if (!removed) {
+            return;
+        }
+        if (partitionMembers.remove(e) != null) {
+            activeEntities.remove(e);
+            activeLights.remove(e);
+            staticEntities.remove(e);
+            dynamicEntities.remove(e);
+        }
+        if (entityStore != null) {
+            entityStore.detach(e);
+        }
+        if (spatialIndex != null) {
+            spatialIndex.remove(e);
+        }
+        unindex(e);
+    }
+
+    /**
+     * Get an entity of the given type from the scene pool, or create a new one
+     * with the factory if the pool is empty, and add it to the scene.
+     * A recycled entity keeps its id and is reset to its default state.
+     */
+    public <T extends Entity> T acquire(Class<T> type, Supplier<T> factory) {
+        ArrayDeque<Entity> pool = pools.get(type);
+        Entity e = pool != null ? pool.pollLast() : null;
+        if (e == null) {
+            T created = factory.get();
+            // same list as a recycled one.
+            if (created instanceof Light l) {
+                addLight(l);
+            } else {
+                addEntity(created);
+            }
+            return created;
+        }
+        e.setReleased(false);
+        e.reset();
+        if (e instanceof Light l) {
+            lights.add(l);
+        } else {
+            entities.add(e);
+        }
+        if (entityStore != null) {
+            entityStore.attach(e);
+        }
+        index(e);
+        updatePartitions(e);
+        return (T) e;
+    }
+
+    public Entity acquire() {
+        return acquire(Entity.class, Entity::new);
+    }
+
+    /**
+     * Acquire an entity and give it the id of a restored snapshot.
+     */
+    <T extends Entity> T acquire(Class<T> type, Supplier<T> factory, long id) {
+        T e = acquire(type, factory);
+        if (e.getId() != id) {
+            if (entitiesById.get(e.getId()) == e) {
+                entitiesById.remove(e.getId());
+            }
+            e.setId(id);
+            entitiesById.put(id, e);
+        }
+        return e;
+    }
+
+    /**
+     * Give the entity back to the scene pool. It is immediately removed from
+     * the scene indexes (name, id and tags) and skipped by the systems (it is
+     * deactivated), and it leaves the entities list at the next
+     * {@link #compact()}.
+     */
+    public void release(Entity e) {
+        if (e.isReleased() || e.getListener() != this) {
+            return;
+        }
+        e.setListener(null);
+        e.setActive(false);
+        e.setReleased(true);
+        // released first: another entity of the same name takes its place.
+        unindex(e);
+        updatePartitions(e);
+        if (entityStore != null) {
+            entityStore.detach(e);
+        }
+        if (spatialIndex != null) {
+            spatialIndex.remove(e);
+        }
+        pendingReleases++;
+    }
+
+    /**
+     * Remove the released entities from the entities and lights lists in one
+     * pass, keeping the order of the others, and put them back into their
+     * pool. Called by the PhysicSystem before each update, when no iteration
+     * over the scene lists is running.
+     */
+    public void compact() {
+        if (pendingReleases == 0) {
+            return;
+        }
+        compact(entities);
+        compact(lights);
+        pendingReleases = 0;
+    }
+
+    private void compact(List<? extends Entity> list) {
+        int w = 0;
+        int size = list.size();
+        for (int i = 0; i < size; i++) {
+            Entity e = list.get(i);
+            if (e.isReleased()) {
+                pools.computeIfAbsent(e.getClass(), c -> new ArrayDeque<>()).addLast(e);
+            } else {
+                if (w != i) {
+                    ((List<Entity>) list).set(w, e);
+                }
+                w++;
+            }
+        }
+        // remove from the end: no element is shifted.
+        for (int i = size - 1; i >= w; i--) {
+            list.remove(i);
+        }
+    }
+
+    private void index(Entity e) {
+        if (e.hasName()) {
+            entitiesByName.putIfAbsent(e.getName(), e);
+        }
+        entitiesById.put(e.getId(), e);
+        for (String tag : e.getTags()) {
+            onTagAdded(e, tag);
+        }
+        e.setListener(this);
+    }
+
+    private void unindex(Entity e) {
+        e.setListener(null);
+        if (e.hasName()) {
+            removeName(e, e.getName());
+        }
+        entitiesById.remove(e.getId());
+        for (String tag : e.getTags()) {
+            onTagRemoved(e, tag);
+        }
+    }
+
+    private void removeName(Entity e, String name) {
+        if (entitiesByName.get(name) == e) {
+            entitiesByName.remove(name);
+            // another entity may share the same name.
+            findByName(entities, name);
+            findByName(lights, name);
+            findByName(emitters, name);
+        }
+    }
+
+    private void findByName(List<? extends Entity> list, String name) {
+        for (Entity o : list) {
+            if (o.hasName() && o.getName().equals(name) && !o.isReleased()) {
+                entitiesByName.putIfAbsent(name, o);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onActiveChanged(Entity e) {
+        updatePartitions(e);
+    }
+
+    @Override
+    public void onPhysicTypeChanged(Entity e) {
+        updatePartitions(e);
+    }
+
+    /**
+     * Force the partitions to be rebuilt, for subclasses changing the entities
+     * or lights lists directly.
+     */
+    protected void invalidatePartitions() {
+        partitionsRebuild = true;
+    }
+
+    private static boolean isActiveMember(Entity e) {
+        return e.isActive() && !e.isReleased();
+    }
+
+    private static boolean isStaticMember(Entity e) {
+        return isActiveMember(e) && !(e instanceof Light) && e.getPhysicType() == PhysicType.STATIC;
+    }
+
+    private static boolean isDynamicMember(Entity e) {
+        return isActiveMember(e) && !(e instanceof Light) && e.getPhysicType() != PhysicType.STATIC;
+    }
+
+    private static boolean isMember(Entity e, int bit) {
+        return switch (bit) {
+            case IN_ACTIVE -> isActiveMember(e);
+            case IN_STATIC -> isStaticMember(e);
+            default -> isDynamicMember(e);
+        };
+    }
+
+    /**
+     * Append the entity to the partitions it joins; the ones it leaves are
+     * swept on the next access, keeping the order of the others. A static
+     * entity is (re)inserted into the spatial index, and removed from it when
+     * it stops being static.
+     */
+    private void updatePartitions(Entity e) {
+        Integer member = partitionMembers.get(e);
+        int listed = member != null ? member : 0;
+        int flags = listed;
+        if (isActiveMember(e) && (listed & IN_ACTIVE) == 0) {
+            if (e instanceof Light l) {
+                activeLights.add(l);
+            } else {
+                activeEntities.add(e);
+            }
+            flags |= IN_ACTIVE;
+        }
+        if (isStaticMember(e) && (listed & IN_STATIC) == 0) {
+            staticEntities.add(e);
+            staticVersion++;
+            flags |= IN_STATIC;
+        }
+        if (isDynamicMember(e) && (listed & IN_DYNAMIC) == 0) {
+            dynamicEntities.add(e);
+            flags |= IN_DYNAMIC;
+        }
+        if (flags != listed) {
+            partitionMembers.put(e, flags);
+        }
+        if (!isActiveMember(e) && (listed & IN_ACTIVE) != 0
+                || !isStaticMember(e) && (listed & IN_STATIC) != 0
+                || !isDynamicMember(e) && (listed & IN_DYNAMIC) != 0) {
+            partitionsSweep = true;
+        }
+        if (isStaticMember(e)) {
+            indexStatic(e);
+        } else if ((listed & IN_STATIC) != 0 && spatialIndex != null) {
+            // a non static entity is indexed again by the next physic step.
+            spatialIndex.remove(e);
+        }
+    }
+
+    /**
+     * Insert the static entity into the spatial index, where it stays until it
+     * moves or leaves the static partition, and draw it at its position (the
+     * previous one is not saved for the static entities). The World is not
+     * indexed: it contains the others, which are constrained into it.
+     */
+    private void indexStatic(Entity e) {
+        e.clearPreviousPosition();
+        if (spatialIndex != null && e != world) {
+            spatialIndex.updateFixed(e);
+        }
+    }
+
+    @Override
+    public void onStaticMoved(Entity e) {
+        if (isStaticMember(e)) {
+            indexStatic(e);
+        }
+    }
+
+    /**
+     * Apply the pending changes to the partitions: a full rebuild after
+     * {@link #invalidatePartitions()}, otherwise one pass removing the
+     * entities which left them.
+     */
+    private void validatePartitions() {
+        if (partitionsRebuild) {
+            if (spatialIndex != null) {
+                staticEntities.forEach(spatialIndex::remove);
+            }
+            activeEntities.clear();
+            activeLights.clear();
+            staticEntities.clear();
+            dynamicEntities.clear();
+            partitionMembers.clear();
+            for (int i = 0; i < entities.size(); i++) {
+                updatePartitions(entities.get(i));
+            }
+            for (int i = 0; i < lights.size(); i++) {
+                updatePartitions(lights.get(i));
+            }
+            staticVersion++;
+            partitionsRebuild = false;
+            partitionsSweep = false;
+        } else if (partitionsSweep) {
+            sweep(activeEntities, IN_ACTIVE);
+            sweep(activeLights, IN_ACTIVE);
+            sweep(staticEntities, IN_STATIC);
+            sweep(dynamicEntities, IN_DYNAMIC);
+            partitionsSweep = false;
+        }
+    }
+
+    private void sweep(List<? extends Entity> partition, int bit) {
+        int w = 0;
+        int size = partition.size();
+        for (int i = 0; i < size; i++) {
+            Entity e = partition.get(i);
+            if (isMember(e, bit)) {
+                if (w != i) {
+                    ((List<Entity>) partition).set(w, e);
+                }
+                w++;
+            } else {
+                int flags = partitionMembers.get(e) & ~bit;
+                if (flags == 0) {
+                    partitionMembers.remove(e);
+                } else {
+                    partitionMembers.put(e, flags);
+                }
+            }
+        }
+        for (int i = size - 1; i >= w; i--) {
+            partition.remove(i);
+        }
+    }
+
+    /**
+     * @return a read-only live view of the active entities. Entities activated
+     * while iterating it are appended (and visited by an index loop); the
+     * deactivated ones are removed on the next call.
+     */
+    public List<Entity> getActiveEntities() {
+        validatePartitions();
+        return activeEntitiesView;
+    }
+
+    public List<Light> getActiveLights() {
+        validatePartitions();
+        return activeLightsView;
+    }
+
+    /**
+     * @return a read-only live view of the active static entities.
+     */
+    public List<Entity> getStaticEntities() {
+        validatePartitions();
+        return staticEntitiesView;
+    }
+
+    /**
+     * @return a read-only live view of the active entities which are not
+     * static (lights excluded): the ones integrated by the PhysicSystem.
+     */
+    public List<Entity> getDynamicEntities() {
+        validatePartitions();
+        return dynamicEntitiesView;
+    }
+
+    /**
+     * @return a counter incremented each time entities join the static
+     * partition, e.g. to collect them again into a cache.
+     */
+    public long getStaticVersion() {
+        validatePartitions();
+        return staticVersion;
+    }
+
+    @Override
+    public void onRenamed(Entity e, String oldName) {
+        removeName(e, oldName);
+        entitiesByName.putIfAbsent(e.getName(), e);
+    }
+
+    @Override
+    public void onTagAdded(Entity e, String tag) {
+        getTagGroup(tag).add(e);
+    }
+
+    private List<Entity> getTagGroup(String tag) {
+        List<Entity> group = entitiesByTag.get(tag);
+        if (group == null) {
+            group = new ArrayList<>();
+            entitiesByTag.put(tag, group);
+            entitiesByTagViews.put(tag, Collections.unmodifiableList(group));
+        }
+        return group;
+    }
+
+    @Override
+    public void onTagRemoved(Entity e, String tag) {
+        List<Entity> group = entitiesByTag.get(tag);
+        if (group != null) {
+            // the released entities are mostly the last spawned ones.
+            int i = group.lastIndexOf(e);
+            if (i >= 0) {
+                group.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Move all the scene entities, lights and cameras physic state into the
+     * given struct-of-arrays store (or back into the entities if <code>null</code>).
+     */
+    public void setEntityStore(EntityStore store) {
+        if (entityStore != null) {
+            entities.forEach(entityStore::detach);
+            lights.forEach(entityStore::detach);
+            cameras.forEach(entityStore::detach);
+        }
+        entityStore = store;
+        if (entityStore != null) {
+            entities.forEach(entityStore::attach);
+            lights.forEach(entityStore::attach);
+            cameras.forEach(entityStore::attach);
+        }
+    }
+
+    public EntityStore getEntityStore() {
+        return entityStore;
+    }
+
+    public void setSpatialIndex(SpatialHash index) {
+        this.spatialIndex = index;
+        if (index != null) {
+            getStaticEntities().forEach(this::indexStatic);
+        }
+    }
+
+    public SpatialHash getSpatialIndex() {
+        return spatialIndex;
     }
 
     public List<Entity> getEntities() {
@@ -34,15 +549,68 @@ public class AbstractScene {
         return lights;
     }
 
+    public List<ParticleEmitter> getEmitters() {
+        return emitters;
+    }
+
     public void setActiveCamera(Camera camera) {
         if (!cameras.contains(camera)) {
             cameras.add(camera);
+            if (entityStore != null) {
+                entityStore.attach(camera);
+            }
         }
         activeCamera = camera;
     }
 
+    /**
+     * @return the entity (or light) with this name, or <code>null</code> if none.
+     */
     public <T extends Entity> T getEntity(String name) {
-        return (T) entities.stream().filter(e -> e.getName().equals(name)).findFirst().get();
+        Entity e = entitiesByName.get(name);
+        if (e == null && name.startsWith("entity_")) {
+            // generated names are not indexed.
+            e = getEntity(parseId(name));
+            if (e != null && !e.getName().equals(name)) {
+                e = null;
+            }
+        }
+        return (T) e;
+    }
+
+    private static long parseId(String name) {
+        long id = 0;
+        for (int i = "entity_".length(); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * @return the entity (or light) with this id, or <code>null</code> if none.
+     */
+    public <T extends Entity> T getEntity(long id) {
+        return (T) entitiesById.get(id);
+    }
+
+    public <T extends Entity> Optional<T> findEntity(String name) {
+        return Optional.ofNullable(getEntity(name));
+    }
+
+    /**
+     * @return a read-only live view of the entities having this tag.
+     */
+    public List<Entity> getEntitiesByTag(String tag) {
+        List<Entity> view = entitiesByTagViews.get(tag);
+        if (view == null) {
+            getTagGroup(tag);
+            view = entitiesByTagViews.get(tag);
+        }
+        return view;
     }
 
     public World getWorld() {
@@ -1,13 +1,18 @@
 package core.scene;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 import core.App;
 import core.entity.Camera;
 import core.entity.Entity;
+import core.entity.EntityStore;
 import core.entity.Light;
+import core.entity.ParticleEmitter;
 import core.entity.World;
 import core.gfx.Renderer;
+import core.physic.SpatialHash;
 
 public interface Scene {
     default void initialize(App app) {
@@ -19,7 +24,7 @@ public interface Scene {
     default void input(App app) {
     }
 
-    default void update(App app, long elapsed) {
+    default void update(App app, double elapsed) {
     }
 
     default void render(App app, Renderer r) {
@@ -38,10 +43,48 @@ public interface Scene {
 
     List<Light> getLights();
 
+    List<ParticleEmitter> getEmitters();
+
+    List<Entity> getActiveEntities();
+
+    List<Light> getActiveLights();
+
+    List<Entity> getStaticEntities();
+
+    List<Entity> getDynamicEntities();
+
+    long getStaticVersion();
+
     <T extends Entity> T getEntity(String string);
 
+    <T extends Entity> T getEntity(long id);
+
+    <T extends Entity> Optional<T> findEntity(String name);
+
+    List<Entity> getEntitiesByTag(String tag);
+
+    void addEntity(Entity e);
+
+    void removeEntity(Entity e);
+
+    <T extends Entity> T acquire(Class<T> type, Supplier<T> factory);
+
+    Entity acquire();
+
+    void release(Entity e);
+
+    void compact();
+
     World getWorld();
 
     Camera getActiveCamera();
 
+    EntityStore getEntityStore();
+
+    void setEntityStore(EntityStore store);
+
+    SpatialHash getSpatialIndex();
+
+    void setSpatialIndex(SpatialHash index);
+
 }
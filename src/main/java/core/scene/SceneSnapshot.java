@@ -0,0 +1,149 @@
+package core.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.entity.Camera;
+import core.entity.Entity;
+import core.entity.Light;
+import core.entity.ParticleEmitter;
+import core.entity.World;
+
+/**
+ * Copy of the render state of a scene at the end of a simulation step, drawn
+ * by the Renderer on the render thread while the simulation goes on.
+ * <p>
+ * Only the entities and emitters intersecting the camera view (at least the
+ * render buffer size, plus a margin) are captured, along with the world. Each
+ * one is copied into a detached instance of its class, created by
+ * {@link Entity#newCopy()} and reused from one capture to the next as long as
+ * the class matches, so that <code>draw()</code> only reads the copied state
+ * on the render thread.
+ */
+public class SceneSnapshot extends AbstractScene implements Scene {
+
+    private static final double MARGIN = 32;
+
+    private final List<Entity> entityCopies = new ArrayList<>();
+    private final List<Light> lightCopies = new ArrayList<>();
+    private final List<ParticleEmitter> emitterCopies = new ArrayList<>();
+    private World worldCopy;
+    private final Camera camera = new Camera("snapshot");
+
+    // minimum size of the captured view: the render buffer size.
+    private final double minViewWidth, minViewHeight;
+
+    private int entityCount, lightCount;
+    private long time;
+
+    public SceneSnapshot(double minViewWidth, double minViewHeight) {
+        this.minViewWidth = minViewWidth;
+        this.minViewHeight = minViewHeight;
+    }
+
+    /**
+     * Capture the render state of the scene.
+     *
+     * @param time the capture time (System.nanoTime()), used for the render interpolation.
+     */
+    public void capture(Scene scene, long time) {
+        this.time = time;
+        World sourceWorld = scene.getWorld();
+        world = copy(worldCopy, sourceWorld);
+        worldCopy = world;
+        entities.clear();
+        lights.clear();
+        emitters.clear();
+        entityCount = 0;
+        lightCount = 0;
+        invalidatePartitions();
+
+        Camera source = scene.getActiveCamera();
+        double viewX = -Double.MAX_VALUE / 4, viewY = -Double.MAX_VALUE / 4;
+        double viewW = Double.MAX_VALUE / 2, viewH = Double.MAX_VALUE / 2;
+        if (source != null) {
+            camera.copyFrom(source);
+            activeCamera = camera;
+            // the camera may move by up to one step before rendering.
+            viewX = Math.min(camera.getX(), camera.getInterpolatedX(0)) - MARGIN;
+            viewY = Math.min(camera.getY(), camera.getInterpolatedY(0)) - MARGIN;
+            viewW = Math.max(camera.getWidth(), minViewWidth) + Math.abs(camera.getX() - camera.getInterpolatedX(0)) + 2 * MARGIN;
+            viewH = Math.max(camera.getHeight(), minViewHeight) + Math.abs(camera.getY() - camera.getInterpolatedY(0)) + 2 * MARGIN;
+        } else {
+            activeCamera = null;
+        }
+
+        List<Entity> sourceEntities = scene.getActiveEntities();
+        for (int i = 0; i < sourceEntities.size(); i++) {
+            Entity e = sourceEntities.get(i);
+            if (intersects(e, viewX, viewY, viewW, viewH)) {
+                entities.add(e == sourceWorld ? world : copyEntity(e));
+            }
+        }
+        List<Light> sourceLights = scene.getActiveLights();
+        for (int i = 0; i < sourceLights.size(); i++) {
+            Light l = sourceLights.get(i);
+            lights.add(copyLight(l));
+        }
+        List<ParticleEmitter> sourceEmitters = scene.getEmitters();
+        for (int i = 0; i < sourceEmitters.size(); i++) {
+            ParticleEmitter pe = sourceEmitters.get(i);
+            if (pe.isActive() && pe.intersects(viewX, viewY, viewW, viewH)) {
+                emitters.add(copyEmitter(pe));
+            }
+        }
+    }
+
+    private static boolean intersects(Entity e, double x, double y, double w, double h) {
+        return e.getX() + e.getWidth() + 1 >= x && e.getX() <= x + w
+                && e.getY() + e.getHeight() + 1 >= y && e.getY() <= y + h;
+    }
+
+    /**
+     * Copy the source into <code>copy</code>, or into a new copy if it is null
+     * or of another class.
+     */
+    private static <T extends Entity> T copy(T copy, T source) {
+        if (copy == null || copy.getClass() != source.getClass()) {
+            copy = (T) source.newCopy();
+        }
+        copy.copyFrom(source);
+        return copy;
+    }
+
+    private Entity copyEntity(Entity source) {
+        if (entityCount == entityCopies.size()) {
+            entityCopies.add(null);
+        }
+        Entity copy = copy(entityCopies.get(entityCount), source);
+        entityCopies.set(entityCount++, copy);
+        return copy;
+    }
+
+    private Light copyLight(Light source) {
+        if (lightCount == lightCopies.size()) {
+            lightCopies.add(null);
+        }
+        Light copy = copy(lightCopies.get(lightCount), source);
+        lightCopies.set(lightCount++, copy);
+        return copy;
+    }
+
+    private ParticleEmitter copyEmitter(ParticleEmitter source) {
+        int n = emitters.size();
+        while (emitterCopies.size() <= n) {
+            emitterCopies.add(null);
+        }
+        ParticleEmitter copy = emitterCopies.get(n);
+        if (copy != null && copy.getCapacity() < source.getCount()) {
+            copy = null;
+        }
+        copy = copy(copy, source);
+        emitterCopies.set(n, copy);
+        return copy;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,228 @@
+package core.scene;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import core.App;
+import core.App.LogLevel;
+import core.entity.Behavior;
+import core.entity.Entity;
+import core.io.ChunkFile;
+
+/**
+ * Stream the entities of a {@link ChunkFile} into the scene around an entity,
+ * usually the active camera, as a {@link Behavior} of this entity.
+ * <p>
+ * The chunks within <code>radius</code> chunks of the one under the entity
+ * center are requested from a background loader thread, which decodes them
+ * from the mapped file. The decoded chunks are then turned into pooled scene
+ * entities on the game loop thread, and the chunks further than
+ * <code>radius + 1</code> are released back to the pool: at most
+ * <code>budget</code> entities are added or released per step, so that
+ * crossing a chunk border never causes a hitch.
+ * <p>
+ * The streamed entities state is not saved back to the file: an unloaded
+ * chunk comes back as it was first loaded. A chunk which cannot be decoded is
+ * logged and stays empty until it is unloaded.
+ */
+public class WorldStreamer implements Behavior {
+
+    private enum State {
+        LOADING, APPLYING, LOADED, UNLOADED, FAILED
+    }
+
+    private static final class Chunk {
+        final int cx, cy;
+        final List<Entity> entities = new ArrayList<>();
+        volatile State state = State.LOADING;
+        ChunkFile.ChunkData data;
+
+        Chunk(int cx, int cy) {
+            this.cx = cx;
+            this.cy = cy;
+        }
+    }
+
+    private final Scene scene;
+    private final ChunkFile file;
+    private final int radius;
+    private final int budget;
+
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    private final BlockingQueue<Chunk> requests = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<Chunk> loaded = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Chunk> applying = new ArrayDeque<>();
+    private final ArrayDeque<Entity> releasing = new ArrayDeque<>();
+    private final Thread loader;
+
+    private int centerX = Integer.MIN_VALUE, centerY = Integer.MIN_VALUE;
+    private int streamed = 0;
+
+    public WorldStreamer(Scene scene, ChunkFile file, int radius, int budget) {
+        this.scene = scene;
+        this.file = file;
+        this.radius = Math.max(0, radius);
+        this.budget = Math.max(1, budget);
+        loader = new Thread(this::load, "world-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private void load() {
+        try {
+            while (true) {
+                Chunk c = requests.take();
+                if (c.state != State.LOADING) {
+                    continue;
+                }
+                try {
+                    c.data = file.read(c.cx, c.cy);
+                } catch (RuntimeException e) {
+                    // a corrupt chunk is skipped, the others are still served.
+                    App.log(WorldStreamer.class, LogLevel.ERROR, "Unable to load the world chunk %d,%d: %s", c.cx,
+                            c.cy, e.getMessage());
+                    c.state = State.FAILED;
+                    continue;
+                }
+                loaded.add(c);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void update(Entity e, double elapsed) {
+        int cx = file.chunkX(e.getX() + e.getWidth() * 0.5);
+        int cy = file.chunkY(e.getY() + e.getHeight() * 0.5);
+        if (cx != centerX || cy != centerY) {
+            centerX = cx;
+            centerY = cy;
+            request();
+            unloadFarChunks();
+        }
+        Chunk c;
+        while ((c = loaded.poll()) != null) {
+            if (c.state == State.LOADING) {
+                c.state = State.APPLYING;
+                applying.add(c);
+            }
+        }
+        int remaining = budget;
+        while (remaining > 0 && !releasing.isEmpty()) {
+            scene.release(releasing.poll());
+            streamed--;
+            remaining--;
+        }
+        while (remaining > 0 && !applying.isEmpty()) {
+            remaining = apply(applying.peek(), remaining);
+        }
+    }
+
+    private void request() {
+        int minX = Math.max(0, centerX - radius), maxX = Math.min(file.getCols() - 1, centerX + radius);
+        int minY = Math.max(0, centerY - radius), maxY = Math.min(file.getRows() - 1, centerY + radius);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                long k = key(x, y);
+                if (!chunks.containsKey(k)) {
+                    Chunk c = new Chunk(x, y);
+                    chunks.put(k, c);
+                    requests.add(c);
+                }
+            }
+        }
+    }
+
+    private void unloadFarChunks() {
+        Iterator<Chunk> it = chunks.values().iterator();
+        while (it.hasNext()) {
+            Chunk c = it.next();
+            if (Math.abs(c.cx - centerX) > radius + 1 || Math.abs(c.cy - centerY) > radius + 1) {
+                it.remove();
+                if (c.state == State.APPLYING) {
+                    applying.remove(c);
+                }
+                c.state = State.UNLOADED;
+                c.data = null;
+                releasing.addAll(c.entities);
+                c.entities.clear();
+            }
+        }
+    }
+
+    /**
+     * Create the next entities of the chunk, up to <code>remaining</code>.
+     *
+     * @return the remaining budget.
+     */
+    private int apply(Chunk c, int remaining) {
+        ChunkFile.ChunkData data = c.data;
+        int i = c.entities.size();
+        for (; i < data.count && remaining > 0; i++, remaining--) {
+            Entity e = scene.acquire();
+            data.apply(i, e);
+            c.entities.add(e);
+            streamed++;
+        }
+        if (i == data.count) {
+            c.state = State.LOADED;
+            c.data = null;
+            applying.poll();
+        }
+        return remaining;
+    }
+
+    @Override
+    public void onDetached(Entity e) {
+        loader.interrupt();
+        for (Chunk c : chunks.values()) {
+            c.state = State.UNLOADED;
+            releasing.addAll(c.entities);
+        }
+        chunks.clear();
+        applying.clear();
+        while (!releasing.isEmpty()) {
+            scene.release(releasing.poll());
+        }
+        streamed = 0;
+    }
+
+    /**
+     * @return the number of chunks loaded into the scene or being loaded.
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * @return the number of chunks waiting to be decoded or applied.
+     */
+    public int getPendingCount() {
+        int n = 0;
+        for (Chunk c : chunks.values()) {
+            if (c.state == State.LOADING || c.state == State.APPLYING) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of streamed entities into the scene.
+     */
+    public int getEntityCount() {
+        return streamed;
+    }
+}
@@ -0,0 +1,22 @@
+package core.script;
+
+/**
+ * Sequential logic of an entity (AI, patrol, timers...), run on its own
+ * virtual thread by the {@link ScriptSystem}. The script waits for the next
+ * steps through its {@link ScriptContext}, e.g.:
+ *
+ * <pre>
+ * scripts.start(enemy, ctx -> {
+ *     while (true) {
+ *         enemy.setVelocity(0.2, 0);
+ *         ctx.waitFor(1000);
+ *         enemy.setVelocity(-0.2, 0);
+ *         ctx.waitFor(1000);
+ *     }
+ * });
+ * </pre>
+ */
+@FunctionalInterface
+public interface Script {
+    void run(ScriptContext ctx);
+}
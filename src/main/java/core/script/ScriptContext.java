@@ -0,0 +1,191 @@
+package core.script;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import core.App;
+import core.entity.Behavior;
+import core.entity.Entity;
+import core.scene.Scene;
+
+/**
+ * State of one running {@link Script}, and the API the script uses to wait
+ * for the next steps.
+ * <p>
+ * Each wait parks the script virtual thread until the {@link ScriptSystem}
+ * resumes it, at the first step where it is due. The scripts of a step run
+ * one after the other in their start order, never in parallel: while resumed,
+ * a script may modify its own entity and read the others; any other change of
+ * the scene (adding, releasing or modifying another entity) must be given to
+ * {@link #post(Runnable)}. The context is attached to the entity as a
+ * {@link Behavior}: removing it, or recycling the entity, cancels the script.
+ */
+public class ScriptContext implements Behavior {
+
+    private final ScriptSystem system;
+    private final Entity entity;
+    private final Script script;
+    Thread thread;
+
+    // set to resume the script, cleared by the script when waiting.
+    private volatile boolean resumed;
+    volatile boolean cancelled;
+    // written by the script thread before it signals the ScriptSystem.
+    boolean done;
+    long dueTick;
+    double dueTime;
+    BooleanSupplier condition;
+    private final List<Runnable> posted = new ArrayList<>();
+
+    // set before each resume.
+    double elapsed;
+    double lastTime;
+
+    ScriptContext(ScriptSystem system, Entity entity, Script script) {
+        this.system = system;
+        this.entity = entity;
+        this.script = script;
+    }
+
+    void run() {
+        try {
+            if (!cancelled) {
+                script.run(this);
+            }
+        } catch (CancellationException e) {
+            // normal end of a cancelled script.
+        } catch (RuntimeException | Error e) {
+            App.log(ScriptContext.class, App.LogLevel.ERROR, "Script of %s failed: %s", entity.getName(), e);
+        } finally {
+            done = true;
+            system.suspended();
+        }
+    }
+
+    void resume() {
+        resumed = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void suspend() {
+        resumed = false;
+        system.suspended();
+        while (!resumed) {
+            LockSupport.park(this);
+        }
+        if (cancelled) {
+            throw new CancellationException("script cancelled");
+        }
+    }
+
+    boolean isDue(long tick, double time) {
+        return tick >= dueTick && time >= dueTime && (condition == null || condition.getAsBoolean());
+    }
+
+    void runPosted() {
+        for (int i = 0; i < posted.size(); i++) {
+            posted.get(i).run();
+        }
+        posted.clear();
+    }
+
+    /**
+     * Wait for the next step.
+     */
+    public void nextTick() {
+        waitTicks(1);
+    }
+
+    /**
+     * Wait for <code>n</code> steps (at least one).
+     */
+    public void waitTicks(int n) {
+        dueTick = system.getTick() + Math.max(1, n);
+        suspend();
+    }
+
+    /**
+     * Wait for <code>ms</code> milliseconds of game time (at least one step).
+     */
+    public void waitFor(double ms) {
+        dueTick = system.getTick() + 1;
+        dueTime = system.getTime() + ms;
+        suspend();
+        dueTime = 0;
+    }
+
+    /**
+     * Wait until the condition is true, evaluated from the next step on by the
+     * game loop thread, without resuming the script.
+     */
+    public void waitUntil(BooleanSupplier condition) {
+        dueTick = system.getTick() + 1;
+        this.condition = condition;
+        suspend();
+        this.condition = null;
+    }
+
+    /**
+     * Run <code>action</code> on the game loop thread once all the scripts of
+     * this step are waiting, in the script start order.
+     */
+    public void post(Runnable action) {
+        posted.add(action);
+    }
+
+    /**
+     * Stop the script: it is resumed one last time at the next step, its
+     * pending wait throwing a <code>CancellationException</code>.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void onDetached(Entity e) {
+        cancel();
+    }
+
+    @Override
+    public void drawDebug(Entity e, Graphics2D g) {
+        g.setColor(Color.GREEN);
+        g.drawString(done ? "done" : cancelled ? "cancelled" : condition != null ? "waiting" : "sleeping",
+                (int) (e.getX() + e.getWidth() + 2), (int) (e.getY() - 2));
+    }
+
+    public <T extends Entity> T getEntity() {
+        return (T) entity;
+    }
+
+    public Scene getScene() {
+        return system.getScene();
+    }
+
+    /**
+     * @return the game time elapsed since the previous resume, in ms.
+     */
+    public double getElapsed() {
+        return elapsed;
+    }
+
+    public double getTime() {
+        return system.getTime();
+    }
+
+    public long getTick() {
+        return system.getTick();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
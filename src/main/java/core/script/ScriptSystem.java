@@ -0,0 +1,190 @@
+package core.script;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import core.entity.Entity;
+import core.scene.Scene;
+
+/**
+ * Run the entity {@link Script}s on virtual threads, resumed once per
+ * simulation step after the PhysicSystem update.
+ * <p>
+ * At each step, the scripts that are due (wait over, entity active) are
+ * resumed one at a time in their start order, each one resuming the next when
+ * it waits again or ends, while the game loop thread parks until the last one
+ * is done: only one script runs at a time, so the scripts see the scene in
+ * the same state from one run to the other, and the cost of a step is one
+ * unpark per due script and a single wake-up of the game loop. Scripts still
+ * waiting cost a check only. The actions posted by the scripts are then run
+ * on the game loop thread, and the finished scripts are detached from their
+ * entity.
+ * <p>
+ * A script must only wait through its {@link ScriptContext}: any other
+ * blocking call stalls the game loop.
+ */
+public class ScriptSystem {
+
+    private final List<ScriptContext> scripts = new ArrayList<>();
+    private final List<ScriptContext> due = new ArrayList<>();
+    private final Thread.Builder builder = Thread.ofVirtual().name("script-", 0);
+    private Thread loopThread;
+    // the scripts of the step, resumed in turn by the previous one.
+    private List<ScriptContext> resuming;
+    private int resumeIndex;
+    private volatile boolean stepDone;
+    private Scene scene;
+
+    private long tick = 0;
+    private double time = 0;
+
+    // statistics of the last step.
+    private int resumedCount;
+    private long updateNanos;
+
+    /**
+     * Attach the script to the entity, to be started at the next step.
+     */
+    public ScriptContext start(Entity e, Script script) {
+        ScriptContext ctx = new ScriptContext(this, e, script);
+        scripts.add(ctx);
+        e.addBehavior(ctx);
+        return ctx;
+    }
+
+    public void update(Scene scene, double elapsed) {
+        long start = System.nanoTime();
+        this.scene = scene;
+        tick++;
+        time += elapsed;
+
+        due.clear();
+        for (int i = 0; i < scripts.size(); i++) {
+            ScriptContext ctx = scripts.get(i);
+            Entity e = ctx.getEntity();
+            if (e.isReleased()) {
+                ctx.cancel();
+            }
+            if (ctx.cancelled && ctx.thread == null) {
+                ctx.done = true;
+            } else if (!ctx.done && (ctx.cancelled || e.isActive() && ctx.isDue(tick, time))) {
+                due.add(ctx);
+            }
+        }
+        resumeAll(due);
+        for (int i = 0; i < due.size(); i++) {
+            due.get(i).runPosted();
+        }
+        removeDone();
+
+        resumedCount = due.size();
+        updateNanos = System.nanoTime() - start;
+    }
+
+    private void resumeAll(List<ScriptContext> list) {
+        if (list.isEmpty()) {
+            return;
+        }
+        loopThread = Thread.currentThread();
+        resuming = list;
+        resumeIndex = 0;
+        stepDone = false;
+        resumeNext();
+        while (!stepDone) {
+            LockSupport.park(this);
+        }
+        resuming = null;
+    }
+
+    /**
+     * Resume the next script of the step, or wake the game loop up after the
+     * last one.
+     */
+    private void resumeNext() {
+        if (resumeIndex == resuming.size()) {
+            stepDone = true;
+            LockSupport.unpark(loopThread);
+            return;
+        }
+        ScriptContext ctx = resuming.get(resumeIndex++);
+        ctx.elapsed = time - ctx.lastTime;
+        ctx.lastTime = time;
+        if (ctx.thread == null) {
+            ctx.thread = builder.start(ctx::run);
+        } else {
+            ctx.resume();
+        }
+    }
+
+    /**
+     * Called by a script thread when it waits or ends.
+     */
+    void suspended() {
+        resumeNext();
+    }
+
+    private void removeDone() {
+        int j = 0;
+        for (int i = 0; i < scripts.size(); i++) {
+            ScriptContext ctx = scripts.get(i);
+            if (ctx.done) {
+                ctx.getEntity().removeBehavior(ctx);
+            } else {
+                scripts.set(j++, ctx);
+            }
+        }
+        while (scripts.size() > j) {
+            scripts.remove(scripts.size() - 1);
+        }
+    }
+
+    /**
+     * Cancel all the scripts, and let them end.
+     */
+    public void dispose() {
+        due.clear();
+        for (int i = 0; i < scripts.size(); i++) {
+            ScriptContext ctx = scripts.get(i);
+            ctx.cancel();
+            if (ctx.thread != null && !ctx.done) {
+                due.add(ctx);
+            }
+        }
+        resumeAll(due);
+        scripts.clear();
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of running scripts.
+     */
+    public int getScriptCount() {
+        return scripts.size();
+    }
+
+    /**
+     * @return the number of scripts resumed at the last step.
+     */
+    public int getResumedCount() {
+        return resumedCount;
+    }
+
+    /**
+     * @return the duration of the last update, in nanoseconds.
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+}
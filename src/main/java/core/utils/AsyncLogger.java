@@ -0,0 +1,177 @@
+package core.utils;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import core.App.LogLevel;
+
+/**
+ * Level-gated asynchronous logger behind <code>App.log()</code>.
+ * <p>
+ * Records under the minimum level are rejected before anything is formatted.
+ * The others are copied (message pattern and arguments, not formatted) into
+ * a preallocated ring buffer, and a background thread formats and prints
+ * them. The formatted timestamp is cached per millisecond. When the ring is
+ * full, records are dropped rather than blocking the caller, and the number
+ * of dropped records is reported.
+ * <p>
+ * As arguments are formatted later on the logger thread, callers should pass
+ * immutable values (numbers, strings, enums).
+ */
+public class AsyncLogger {
+
+    private static final int CAPACITY = 8192;
+
+    private static final class Record {
+        volatile long sequence = -1;
+        long time;
+        LogLevel level;
+        Class<?> clazz;
+        String message;
+        int argCount;
+        Object a0, a1, a2;
+        Object[] args;
+    }
+
+    private static final AsyncLogger INSTANCE = new AsyncLogger(CAPACITY);
+
+    private final Record[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail = 0;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile LogLevel minLevel = LogLevel.INFO;
+
+    // consumer side only
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long cachedMillis = -1;
+    private String cachedTimestamp;
+    private final Thread consumer;
+
+    private AsyncLogger(int capacity) {
+        ring = new Record[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Record();
+        }
+        consumer = new Thread(this::drainLoop, "logger");
+        consumer.setDaemon(true);
+        consumer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "logger-flush"));
+    }
+
+    public static AsyncLogger get() {
+        return INSTANCE;
+    }
+
+    public void setLevel(LogLevel level) {
+        this.minLevel = level;
+    }
+
+    public LogLevel getLevel() {
+        return minLevel;
+    }
+
+    public boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= minLevel.ordinal();
+    }
+
+    public void log(Class<?> clazz, LogLevel level, String message, int argCount,
+            Object a0, Object a1, Object a2, Object[] args) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail >= ring.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        Record r = ring[(int) (seq & mask)];
+        r.time = System.currentTimeMillis();
+        r.level = level;
+        r.clazz = clazz;
+        r.message = message;
+        r.argCount = argCount;
+        r.a0 = a0;
+        r.a1 = a1;
+        r.a2 = a2;
+        r.args = args;
+        // publish the record to the consumer
+        r.sequence = seq;
+    }
+
+    private void drainLoop() {
+        while (true) {
+            if (!drain()) {
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+
+    /**
+     * Print all the published records.
+     *
+     * @return true if at least one record was printed.
+     */
+    private synchronized boolean drain() {
+        boolean done = false;
+        long t = tail;
+        Record r;
+        while ((r = ring[(int) (t & mask)]).sequence == t) {
+            print(r);
+            r.clazz = null;
+            r.message = null;
+            r.a0 = r.a1 = r.a2 = null;
+            r.args = null;
+            tail = ++t;
+            done = true;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            System.err.println("%s;%s;%s;%d log records dropped".formatted(
+                    timestamp(System.currentTimeMillis()), LogLevel.WARN, AsyncLogger.class.getName(), lost));
+        }
+        return done;
+    }
+
+    /**
+     * Print synchronously all the pending records.
+     */
+    public void flush() {
+        drain();
+        System.out.flush();
+        System.err.flush();
+    }
+
+    private void print(Record r) {
+        String formattedMsg;
+        try {
+            formattedMsg = switch (r.argCount) {
+                case 0 -> r.message;
+                case 1 -> String.format(r.message, r.a0);
+                case 2 -> String.format(r.message, r.a0, r.a1);
+                case 3 -> String.format(r.message, r.a0, r.a1, r.a2);
+                default -> String.format(r.message, r.args);
+            };
+        } catch (RuntimeException e) {
+            formattedMsg = r.message + " (format error: " + e.getMessage() + ")";
+        }
+        PrintStream out = r.level == LogLevel.ERROR ? System.err : System.out;
+        out.println(timestamp(r.time) + ";" + r.level + ";" + r.clazz.getName() + ";" + formattedMsg);
+    }
+
+    private String timestamp(long millis) {
+        if (millis != cachedMillis) {
+            cachedMillis = millis;
+            cachedTimestamp = DateTimeFormatter.ISO_ZONED_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(zone));
+        }
+        return cachedTimestamp;
+    }
+}
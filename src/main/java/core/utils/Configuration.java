@@ -3,24 +3,187 @@ package core.utils;
 import static core.App.*;
 
 import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import core.App;
 import core.App.LogLevel;
+import core.App.LoopMode;
 import core.App.RunningMode;
 
+/**
+ * Typed configuration registry.
+ * <p>
+ * Each entry is declared once as a {@link Key} (name, short aliases, parser
+ * and default value). The properties file and the command line arguments
+ * (where an alias stands for its full key name) are parsed once into an
+ * immutable array of typed values, read through {@link #get(Key)} or
+ * {@link #get(String, Object)} without any parsing.
+ * <p>
+ * With {@link #watch()}, the configuration file is watched through a NIO
+ * {@link WatchService}: on change, it is parsed again, the command line
+ * arguments still overriding it, and the new values of the reloadable keys
+ * (debug level, log level, FPS, light-map scale) are published; the other
+ * changes are only applied at the next start. Consumers poll
+ * {@link #hasChanged(Key, long)} with the {@link #getVersion()} of their last
+ * update, on their own thread.
+ */
 public class Configuration {
+
+    /**
+     * A configuration entry.
+     */
+    public static final class Key<T> {
+        private final int index;
+        private final String name;
+        private final String[] aliases;
+        private final String defaultValue;
+        private final Function<String, T> parser;
+        private final boolean reloadable;
+
+        private Key(String name, String defaultValue, Function<String, T> parser, boolean reloadable,
+                String... aliases) {
+            this.index = KEYS.size();
+            this.name = name;
+            this.aliases = aliases;
+            this.defaultValue = defaultValue;
+            this.parser = parser;
+            this.reloadable = reloadable;
+            KEYS.add(this);
+            KEYS_BY_NAME.put(name, this);
+            for (String alias : aliases) {
+                KEYS_BY_NAME.put(alias, this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isReloadable() {
+            return reloadable;
+        }
+    }
+
+    private static final List<Key<?>> KEYS = new ArrayList<>();
+    private static final Map<String, Key<?>> KEYS_BY_NAME = new HashMap<>();
+
+    private static <T> Key<T> key(String name, String defaultValue, Function<String, T> parser, String... aliases) {
+        return new Key<>(name, defaultValue, parser, false, aliases);
+    }
+
+    private static <T> Key<T> reloadable(String name, String defaultValue, Function<String, T> parser,
+            String... aliases) {
+        return new Key<>(name, defaultValue, parser, true, aliases);
+    }
+
+    private static Dimension parseDimension(String value) {
+        String[] size = value.split("x");
+        return new Dimension(Integer.parseInt(size[0].trim()), Integer.parseInt(size[1].trim()));
+    }
+
+    private static Boolean parseBoolean(String value) {
+        return Boolean.valueOf(value.trim());
+    }
+
+    public static final Key<Integer> DEBUG = reloadable("app.debug", "0", Integer::valueOf, "debug", "d");
+    public static final Key<RunningMode> MODE = key("app.mode", "PROD", RunningMode::valueOf, "mode", "m");
+    public static final Key<LogLevel> LOG_LEVEL = reloadable("app.log.level", "INFO", LogLevel::valueOf, "log");
+    public static final Key<LoopMode> LOOP_MODE = key("app.loop.mode", "VARIABLE", LoopMode::valueOf, "loop");
+    public static final Key<Dimension> WINDOW_SIZE = key("app.window.size", "720x460",
+            Configuration::parseDimension, "ws");
+    public static final Key<Dimension> BUFFER_SIZE = key("app.gfx.rendering.buffer.size", "320x200",
+            Configuration::parseDimension, "rbs");
+    public static final Key<Integer> FPS = reloadable("app.render.fps", "60", Integer::valueOf, "fps");
+    public static final Key<Integer> TICK_RATE = key("app.loop.tick.rate", "60", Integer::valueOf, "tps");
+    public static final Key<Integer> PIPELINE_DEPTH = key("app.loop.pipeline.depth", "2", Integer::valueOf);
+    public static final Key<Integer> MAX_STEPS = key("app.loop.max.steps", "5", Integer::valueOf);
+    public static final Key<Long> RANDOM_SEED = key("app.random.seed", "1234", Long::valueOf);
+    public static final Key<Boolean> ENTITY_STORE = key("app.physic.entity.store", "false",
+            Configuration::parseBoolean);
+    public static final Key<Integer> ENTITY_STORE_CAPACITY = key("app.physic.entity.store.capacity", "1024",
+            Integer::valueOf);
+    public static final Key<Boolean> COLLISION = key("app.physic.collision", "false", Configuration::parseBoolean);
+    public static final Key<Integer> INDEX_CELL_SIZE = key("app.scene.index.cell.size", "32", Integer::valueOf);
+    public static final Key<Integer> INDEX_BUCKETS = key("app.scene.index.buckets", "4096", Integer::valueOf);
+    public static final Key<String> STREAM_FILE = key("app.world.stream.file", "", String::trim);
+    public static final Key<Integer> STREAM_RADIUS = key("app.world.stream.radius", "1", Integer::valueOf);
+    public static final Key<Integer> STREAM_BUDGET = key("app.world.stream.budget", "256", Integer::valueOf);
+    public static final Key<Boolean> PARALLEL = key("app.physic.parallel", "false", Configuration::parseBoolean);
+    public static final Key<Integer> PARALLEL_THREADS = key("app.physic.parallel.threads", "0", Integer::valueOf);
+    public static final Key<Integer> PARALLEL_CHUNK_SIZE = key("app.physic.parallel.chunk.size", "4096",
+            Integer::valueOf);
+    public static final Key<Boolean> CULLING = key("app.gfx.culling", "true", Configuration::parseBoolean);
+    public static final Key<Boolean> RASTER = key("app.gfx.raster", "false", Configuration::parseBoolean);
+    public static final Key<Boolean> TILED = key("app.gfx.tiled", "false", Configuration::parseBoolean);
+    public static final Key<Integer> TILED_THREADS = key("app.gfx.tiled.threads", "0", Integer::valueOf);
+    public static final Key<Integer> TILED_TILE_SIZE = key("app.gfx.tiled.tile.size", "64", Integer::valueOf);
+    public static final Key<Boolean> LIGHTMAP = key("app.gfx.lightmap", "false", Configuration::parseBoolean);
+    public static final Key<Double> LIGHTMAP_SCALE = reloadable("app.gfx.lightmap.scale", "1.0", Double::valueOf);
+    public static final Key<Boolean> STATIC_LAYER = key("app.gfx.static.layer", "false",
+            Configuration::parseBoolean);
+    public static final Key<Integer> STATIC_LAYER_TILE_SIZE = key("app.gfx.static.layer.tile.size", "256",
+            Integer::valueOf);
+    public static final Key<Boolean> PROFILER = key("app.profiler", "false", Configuration::parseBoolean);
+    public static final Key<String> PROFILER_EXPORT = key("app.profiler.export", "", String::trim);
+    public static final Key<Boolean> CONFIG_RELOAD = key("app.config.reload", "false", Configuration::parseBoolean);
+    public static final Key<String> INPUT_RECORD = key("app.input.record", "", String::trim);
+    public static final Key<String> INPUT_REPLAY = key("app.input.replay", "", String::trim);
+    public static final Key<Integer> TEST_TICKS = key("app.test.ticks", "600", Integer::valueOf, "ticks");
+    public static final Key<Integer> TEST_DUMP_EVERY = key("app.test.dump.every", "0", Integer::valueOf);
+    public static final Key<String> TEST_DUMP_FORMAT = key("app.test.dump.format", "PNG", String::trim);
+    public static final Key<String> TEST_DUMP_PATH = key("app.test.dump.path", "target/frames", String::trim);
+
+    /**
+     * The parsed values, replaced as a whole on each change.
+     *
+     * @param values    the typed values, by key index.
+     * @param explicit  true for the keys set by the file or the arguments.
+     * @param changedAt the version where each value last changed.
+     */
+    private record Values(Object[] values, boolean[] explicit, long[] changedAt, long version) {
+    }
+
     Properties attributes = new Properties();
+    // command line arguments, applied again over the file on reload.
+    private final Properties overrides = new Properties();
     private App app;
+    private volatile Values values;
+    private final Set<String> unknownKeys = ConcurrentHashMap.newKeySet();
+    private URL source;
+    private Thread watcher;
+    private WatchService watchService;
 
     public Configuration(App app) {
         this.app = app;
-
+        values = resolve(attributes, null);
     }
 
     public Configuration load(String configFilePath) {
-        try {
-            attributes.load(this.getClass().getResourceAsStream(configFilePath));
+        try (InputStream in = this.getClass().getResourceAsStream(configFilePath)) {
+            source = this.getClass().getResource(configFilePath);
+            Properties file = new Properties();
+            file.load(in);
+            putAll(attributes, file);
+            values = resolve(attributes, values);
             extractConfigValues();
         } catch (Exception e) {
             log(App.class, LogLevel.ERROR, "Unable to read configuration file %s: %s", configFilePath, e.getMessage());
@@ -31,63 +194,236 @@ public class Configuration {
     public Configuration parseArgs(String[] args) {
         log(App.class, LogLevel.INFO, "Parsing command line arguments...");
         for (String arg : args) {
-            log(Configuration.class, LogLevel.INFO, "arg: '%s'", arg);
+            log(Configuration.class, LogLevel.DEBUG, "arg: '%s'", arg);
             if (arg.contains("=")) {
-                String[] keyVal = arg.split("=");
-                attributes.setProperty(keyVal[0], keyVal[1]);
-                log(App.class, LogLevel.INFO, " |_ Override config:%s=%s", keyVal[0], keyVal[1]);
+                String[] keyVal = arg.split("=", 2);
+                Key<?> key = KEYS_BY_NAME.get(keyVal[0]);
+                String name = key != null ? key.name : keyVal[0];
+                attributes.setProperty(name, keyVal[1]);
+                overrides.setProperty(name, keyVal[1]);
+                log(App.class, LogLevel.DEBUG, " |_ Override config:%s=%s", name, keyVal[1]);
             } else {
-                log(App.class, LogLevel.WARN, " |_ Warning: Unknown argument:%", arg);
+                log(App.class, LogLevel.WARN, " |_ Warning: Unknown argument:%s", arg);
             }
         }
+        values = resolve(attributes, values);
         log(App.class, LogLevel.INFO, "Parsing done.");
 
         return this;
     }
 
-    public Configuration extractConfigValues() {
-        log(App.class, LogLevel.INFO, "Read configuration...");
-        for (String key : attributes.stringPropertyNames()) {
-            switch (key) {
-                case "app.debug", "debug", "d" -> {
-                    app.debug = Integer.parseInt(attributes.getProperty(key, "0"));
-                    log(App.class, LogLevel.INFO, "=> debug level overriden with arg %d", app.debug);
-                }
-                case "app.mode", "mode", "m" -> {
-                    String mode = attributes.getProperty(key, "PROD");
-                    app.mode = RunningMode.valueOf(mode);
-                    log(App.class, LogLevel.INFO, "=> mode overriden with arg %s", app.mode);
-                }
-                default -> {
+    /**
+     * Copy the properties, the aliases being replaced by their full key name.
+     */
+    private static void putAll(Properties to, Properties from) {
+        for (String name : from.stringPropertyNames()) {
+            Key<?> key = KEYS_BY_NAME.get(name);
+            to.setProperty(key != null ? key.name : name, from.getProperty(name));
+        }
+    }
+
+    /**
+     * Parse the typed value of every key.
+     *
+     * @param previous the current values, to track the changes, or null.
+     */
+    private Values resolve(Properties properties, Values previous) {
+        Object[] parsed = new Object[KEYS.size()];
+        boolean[] explicit = new boolean[KEYS.size()];
+        long version = previous != null ? previous.version() + 1 : 0;
+        long[] changedAt = previous != null ? previous.changedAt().clone() : new long[KEYS.size()];
+        for (Key<?> key : KEYS) {
+            String raw = properties.getProperty(key.name);
+            explicit[key.index] = raw != null;
+            Object value = null;
+            if (raw != null) {
+                try {
+                    value = key.parser.apply(raw);
+                } catch (RuntimeException e) {
+                    log(Configuration.class, LogLevel.WARN, "Invalid value '%s' for %s, using %s", raw, key.name,
+                            key.defaultValue);
                 }
             }
+            if (value == null) {
+                value = key.parser.apply(key.defaultValue);
+            }
+            parsed[key.index] = value;
+            if (previous != null && !value.equals(previous.values()[key.index])) {
+                changedAt[key.index] = version;
+            }
+        }
+        return new Values(parsed, explicit, changedAt, version);
+    }
 
+    public Configuration extractConfigValues() {
+        log(App.class, LogLevel.INFO, "Read configuration...");
+        Values v = values;
+        if (v.explicit()[DEBUG.index]) {
+            app.debug = get(DEBUG);
+            log(App.class, LogLevel.DEBUG, "=> debug level overriden with arg %d", app.debug);
+        }
+        if (v.explicit()[MODE.index]) {
+            app.mode = get(MODE);
+            log(App.class, LogLevel.DEBUG, "=> mode overriden with arg %s", app.mode);
+        }
+        if (v.explicit()[LOG_LEVEL.index]) {
+            AsyncLogger.get().setLevel(get(LOG_LEVEL));
+            log(App.class, LogLevel.DEBUG, "=> log level overriden with arg %s", AsyncLogger.get().getLevel());
+        }
+        if (v.explicit()[LOOP_MODE.index]) {
+            app.loopMode = get(LOOP_MODE);
+            log(App.class, LogLevel.DEBUG, "=> loop mode overriden with arg %s", app.loopMode);
         }
         return this;
     }
 
-    private <T> T getConfig(String key, T defaultValue) {
-        switch (key) {
-            case "app.debug", "debug", "d" -> {
-                return (T) Integer.valueOf(attributes.getProperty(key, "0"));
+    /**
+     * @return the value of the key, or its default value if not configured.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        Object value = values.values()[key.index];
+        // Dimension is mutable: each caller gets its own copy.
+        return value instanceof Dimension d ? (T) new Dimension(d) : (T) value;
+    }
+
+    /**
+     * @return the value of the key (or alias), or <code>defaultValue</code> if
+     * the key is not configured or unknown.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, T defaultValue) {
+        Key<?> k = KEYS_BY_NAME.get(key);
+        if (k == null) {
+            if (unknownKeys.add(key)) {
+                log(App.class, LogLevel.WARN, "Unknown configuration key %s", key);
+            }
+            return defaultValue;
+        }
+        if (defaultValue != null && !values.explicit()[k.index]) {
+            return defaultValue;
+        }
+        return (T) get(k);
+    }
+
+    /**
+     * @return the version of the values, incremented on each change.
+     */
+    public long getVersion() {
+        return values.version();
+    }
+
+    /**
+     * @return true if the value of the key changed after the given version.
+     */
+    public boolean hasChanged(Key<?> key, long version) {
+        return values.changedAt()[key.index] > version;
+    }
+
+    /**
+     * Watch the configuration file, when it has been loaded from a file, and
+     * reload it on change.
+     */
+    public void watch() {
+        if (watcher != null) {
+            return;
+        }
+        Path file;
+        try {
+            if (source == null || !"file".equals(source.getProtocol())) {
+                log(Configuration.class, LogLevel.INFO, "Configuration %s is not a file: no hot reload", source);
+                return;
+            }
+            file = Path.of(source.toURI());
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException | URISyntaxException e) {
+            log(Configuration.class, LogLevel.ERROR, "Unable to watch the configuration %s: %s", source,
+                    e.getMessage());
+            return;
+        }
+        watcher = new Thread(() -> watchLoop(file), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log(Configuration.class, LogLevel.INFO, "Watching configuration %s", file);
+    }
+
+    private void watchLoop(Path file) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= file.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    reload(file);
+                }
             }
-            case "app.mode", "mode", "m" -> {
-                return (T) RunningMode.valueOf(attributes.getProperty(key, "PROD"));
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped.
+        }
+    }
+
+    private synchronized void reload(Path file) {
+        Properties reloaded = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            reloaded.load(in);
+        } catch (IOException e) {
+            log(Configuration.class, LogLevel.ERROR, "Unable to reload configuration %s: %s", file, e.getMessage());
+            return;
+        }
+        putAll(reloaded, overrides);
+        Properties normalized = new Properties();
+        putAll(normalized, reloaded);
+        Values previous = values;
+        Values next = resolve(normalized, previous);
+        boolean changed = false;
+        for (Key<?> key : KEYS) {
+            Object before = previous.values()[key.index], after = next.values()[key.index];
+            if (before.equals(after)) {
+                continue;
             }
-            case "app.window.size", "ws" -> {
-                String[] size = attributes.getProperty(key, "720x460").split("x");
-                return (T) new Dimension(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+            if (key.reloadable) {
+                changed = true;
+                log(Configuration.class, LogLevel.INFO, "=> %s reloaded: %s", key.name,
+                        normalized.getProperty(key.name, key.defaultValue));
+            } else {
+                // keep the running value, consistent with the running systems.
+                next.values()[key.index] = before;
+                next.explicit()[key.index] = previous.explicit()[key.index];
+                next.changedAt()[key.index] = previous.changedAt()[key.index];
+                log(Configuration.class, LogLevel.WARN, "=> %s changed to %s: applied at the next start", key.name,
+                        normalized.getProperty(key.name, key.defaultValue));
             }
-            case "app.gfx.rendering.buffer.size", "rbs" -> {
-                String[] size = attributes.getProperty(key, "320x200").split("x");
-                return (T) new Dimension(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        }
+        if (changed) {
+            attributes = normalized;
+            values = next;
+        }
+    }
+
+    public void dispose() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // nothing to do.
             }
-            default -> log(App.class, LogLevel.WARN, "Unknown configuration key %s", key);
         }
-        return null;
     }
 
-    public <T> T get(String key, T defaultValue) {
-        return (T) getConfig(key, defaultValue);
+    /**
+     * @return the keys, in declaration order.
+     */
+    public static List<Key<?>> getKeys() {
+        return List.copyOf(KEYS);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values.values());
     }
 }
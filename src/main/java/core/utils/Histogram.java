@@ -0,0 +1,99 @@
+package core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of positive <code>long</code> values (e.g. durations in
+ * ns), in the spirit of HdrHistogram: each power of two is split into 32
+ * buckets, so any recorded value is known within about 3%, whatever its
+ * magnitude, with a fixed footprint and no allocation when recording.
+ * <p>
+ * Not thread safe: values must be recorded by a single thread.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_COUNT];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exp - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    /**
+     * @return the middle of the bucket at <code>index</code>.
+     */
+    private static long valueAt(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long low = (long) (index % SUB_COUNT + SUB_COUNT) << shift;
+        return low + ((1L << shift) >> 1);
+    }
+
+    /**
+     * @param percentile in [0..100]
+     * @return the value below which <code>percentile</code>% of the recorded
+     * values are, 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, Math.max(min, valueAt(i)));
+            }
+        }
+        return max;
+    }
+
+    public double getMean() {
+        return count > 0 ? sum / (double) count : 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+}
@@ -0,0 +1,289 @@
+package core.utils;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import core.App;
+
+/**
+ * Built-in frame profiler.
+ * <p>
+ * Subsystem durations are measured with <code>System.nanoTime()</code> spans
+ * (<code>long t = profiler.start(); ...; profiler.end(Span.PHYSIC, t);</code>)
+ * and recorded into {@link Histogram}s: one for the whole run, exported with
+ * {@link #export(Path)}, and one per second, whose p50/p99/max are shown by
+ * the debug overlay. Each span must always be recorded from the same thread.
+ * <p>
+ * The renderer sets the per-frame counters, then calls {@link #frame()}, which
+ * also samples the GC activity and the allocation rate once per second.
+ * When disabled, all the calls return at once.
+ */
+public class Profiler {
+
+    public enum Span {
+        FRAME, INPUT, PHYSIC, SCRIPT, RENDER, WINDOW
+    }
+
+    public enum Counter {
+        ENTITIES, CULLED_ENTITIES, LIGHTS, CULLED_LIGHTS, PARTICLES, DRAW_CALLS
+    }
+
+    private static final long INTERVAL_NS = 1_000_000_000L;
+
+    private static final class SpanStats {
+        final Histogram total = new Histogram();
+        final Histogram interval = new Histogram();
+        long intervalStart;
+        // statistics of the last complete interval, read by the overlay.
+        volatile long p50, p99, max;
+
+        void record(long now, long duration) {
+            total.record(duration);
+            interval.record(duration);
+            if (now - intervalStart >= INTERVAL_NS) {
+                p50 = interval.getPercentile(50);
+                p99 = interval.getPercentile(99);
+                max = interval.getMax();
+                interval.reset();
+                intervalStart = now;
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final SpanStats[] spans = new SpanStats[Span.values().length];
+    private final long[] counters = new long[Counter.values().length];
+    private final long[] counterSums = new long[Counter.values().length];
+    private final long[] counterMax = new long[Counter.values().length];
+    private long frames;
+    private long lastFrame;
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final long startTime;
+    private final long startGcCount, startGcTime, startAllocated;
+    private long lastSample, lastGcCount, lastGcTime, lastAllocated;
+    // rates of the last sample, per second.
+    private volatile double gcRate, gcTimeRate, allocationRate;
+
+    public Profiler(boolean enabled) {
+        this.enabled = enabled;
+        startTime = lastSample = System.nanoTime();
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = new SpanStats();
+            spans[i].intervalStart = startTime;
+        }
+        startGcCount = lastGcCount = gcCount();
+        startGcTime = lastGcTime = gcTime();
+        startAllocated = lastAllocated = allocatedBytes();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the start time of a span, to be given to {@link #end(Span, long)}.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void end(Span span, long start) {
+        if (enabled) {
+            long now = System.nanoTime();
+            spans[span.ordinal()].record(now, now - start);
+        }
+    }
+
+    public void count(Counter counter, long value) {
+        if (enabled) {
+            counters[counter.ordinal()] = value;
+        }
+    }
+
+    /**
+     * End of a rendered frame: record the frame time, accumulate the counters
+     * and, once per second, sample the GC and allocation rates.
+     */
+    public void frame() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (frames > 0) {
+            spans[Span.FRAME.ordinal()].record(now, now - lastFrame);
+        }
+        lastFrame = now;
+        frames++;
+        for (int i = 0; i < counters.length; i++) {
+            counterSums[i] += counters[i];
+            counterMax[i] = Math.max(counterMax[i], counters[i]);
+        }
+        if (now - lastSample >= INTERVAL_NS) {
+            double seconds = (now - lastSample) / 1e9;
+            long gcCount = gcCount(), gcTime = gcTime(), allocated = allocatedBytes();
+            gcRate = (gcCount - lastGcCount) / seconds;
+            gcTimeRate = (gcTime - lastGcTime) / seconds;
+            allocationRate = allocated >= 0 ? (allocated - lastAllocated) / seconds : 0;
+            lastSample = now;
+            lastGcCount = gcCount;
+            lastGcTime = gcTime;
+            lastAllocated = allocated;
+        }
+    }
+
+    private long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            n += Math.max(0, gc.getCollectionCount());
+        }
+        return n;
+    }
+
+    private long gcTime() {
+        long ms = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            ms += Math.max(0, gc.getCollectionTime());
+        }
+        return ms;
+    }
+
+    /**
+     * @return the bytes allocated by all the threads since the JVM start, -1 if
+     * not supported.
+     */
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemoryEnabled()) {
+            return t.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * @return the median duration of the span over the last second, in ns.
+     */
+    public long getP50(Span span) {
+        return spans[span.ordinal()].p50;
+    }
+
+    public long getP99(Span span) {
+        return spans[span.ordinal()].p99;
+    }
+
+    public long getMax(Span span) {
+        return spans[span.ordinal()].max;
+    }
+
+    public Histogram getHistogram(Span span) {
+        return spans[span.ordinal()].total;
+    }
+
+    public long getCounter(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * @return the number of collections per second.
+     */
+    public double getGcRate() {
+        return gcRate;
+    }
+
+    /**
+     * @return the time spent into the collections, in ms per second.
+     */
+    public double getGcTimeRate() {
+        return gcTimeRate;
+    }
+
+    /**
+     * @return the allocated bytes per second.
+     */
+    public double getAllocationRate() {
+        return allocationRate;
+    }
+
+    /**
+     * Write the whole run statistics to <code>path</code>, as JSON if its name
+     * ends with <code>.json</code>, as CSV otherwise.
+     */
+    public void export(Path path) {
+        if (!enabled) {
+            return;
+        }
+        boolean json = path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.writeString(path, json ? toJson() : toCsv());
+            App.log(Profiler.class, App.LogLevel.INFO, "Profile written to %s", path);
+        } catch (IOException e) {
+            App.log(Profiler.class, App.LogLevel.ERROR, "Unable to write the profile to %s: %s", path,
+                    e.getMessage());
+        }
+    }
+
+    private String toCsv() {
+        StringBuilder sb = new StringBuilder("type,name,count,mean,p50,p90,p99,p999,max\n");
+        for (Span s : Span.values()) {
+            Histogram h = getHistogram(s);
+            sb.append(String.format(Locale.ROOT, "span_ms,%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f%n",
+                    s.name().toLowerCase(Locale.ROOT), h.getCount(), h.getMean() / 1e6,
+                    h.getPercentile(50) / 1e6, h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6,
+                    h.getPercentile(99.9) / 1e6, h.getMax() / 1e6));
+        }
+        for (Counter c : Counter.values()) {
+            sb.append(String.format(Locale.ROOT, "counter,%s,%d,%.2f,,,,,%d%n",
+                    c.name().toLowerCase(Locale.ROOT), frames, counterMean(c), counterMax[c.ordinal()]));
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        sb.append(String.format(Locale.ROOT, "gc,collections,%d,%.3f,,,,,%n", gcCount() - startGcCount,
+                (gcCount() - startGcCount) / seconds));
+        sb.append(String.format(Locale.ROOT, "gc,time_ms,%d,%.3f,,,,,%n", gcTime() - startGcTime,
+                (gcTime() - startGcTime) / seconds));
+        sb.append(String.format(Locale.ROOT, "alloc,mb,%.3f,%.3f,,,,,%n", allocatedMb(), allocatedMb() / seconds));
+        return sb.toString();
+    }
+
+    private String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"frames\": ").append(frames).append(",\n  \"spans_ms\": {");
+        Span[] all = Span.values();
+        for (int i = 0; i < all.length; i++) {
+            Histogram h = getHistogram(all[i]);
+            sb.append(String.format(Locale.ROOT,
+                    "%n    \"%s\": {\"count\": %d, \"mean\": %.4f, \"p50\": %.4f, \"p90\": %.4f, \"p99\": %.4f, \"p999\": %.4f, \"max\": %.4f}%s",
+                    all[i].name().toLowerCase(Locale.ROOT), h.getCount(), h.getMean() / 1e6,
+                    h.getPercentile(50) / 1e6, h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6,
+                    h.getPercentile(99.9) / 1e6, h.getMax() / 1e6, i < all.length - 1 ? "," : ""));
+        }
+        sb.append("\n  },\n  \"counters\": {");
+        Counter[] counters = Counter.values();
+        for (int i = 0; i < counters.length; i++) {
+            sb.append(String.format(Locale.ROOT, "%n    \"%s\": {\"mean\": %.2f, \"max\": %d}%s",
+                    counters[i].name().toLowerCase(Locale.ROOT), counterMean(counters[i]),
+                    counterMax[counters[i].ordinal()], i < counters.length - 1 ? "," : ""));
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        sb.append(String.format(Locale.ROOT,
+                "%n  },%n  \"duration_s\": %.3f,%n  \"gc\": {\"collections\": %d, \"time_ms\": %d},%n  \"allocated_mb\": %.3f%n}%n",
+                seconds, gcCount() - startGcCount, gcTime() - startGcTime, allocatedMb()));
+        return sb.toString();
+    }
+
+    private double counterMean(Counter c) {
+        return frames > 0 ? counterSums[c.ordinal()] / (double) frames : 0;
+    }
+
+    private double allocatedMb() {
+        long allocated = allocatedBytes();
+        return allocated >= 0 ? (allocated - startAllocated) / (1024.0 * 1024.0) : 0;
+    }
+}
@@ -0,0 +1,73 @@
+package core.utils;
+
+import java.util.SplittableRandom;
+
+/**
+ * Engine-wide source of random numbers, seeded by <code>app.random.seed</code>.
+ * <p>
+ * {@link #current()} gives the generator of the calling thread, split from
+ * the root one on the first call of each thread: no lock and no allocation
+ * afterwards, and no contention between the threads, unlike
+ * <code>Math.random()</code>; but the split order, and so the sequences,
+ * depend on the threads scheduling. {@link #create(String)} gives an
+ * independent generator for a system or an entity, whose sequence only
+ * depends on the seed and the name, whatever the thread using it: the
+ * simulation and the renderer each use their own ones, so that drawing never
+ * changes the simulation.
+ */
+public final class RandomService {
+
+    private static final class Local {
+        long generation = -1;
+        SplittableRandom random;
+    }
+
+    private static final ThreadLocal<Local> LOCAL = ThreadLocal.withInitial(Local::new);
+
+    private static long seed = 1234;
+    private static SplittableRandom root = new SplittableRandom(seed);
+    // incremented on each reseed, to let the threads renew their generator.
+    private static volatile long generation = 0;
+
+    private RandomService() {
+    }
+
+    /**
+     * Reseed the root generator. The threads generators are split again from
+     * it on their next {@link #current()} call.
+     */
+    public static synchronized void setSeed(long s) {
+        seed = s;
+        root = new SplittableRandom(s);
+        generation++;
+    }
+
+    public static synchronized long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the generator of the calling thread, to be used by this thread only.
+     */
+    public static SplittableRandom current() {
+        Local local = LOCAL.get();
+        long g = generation;
+        if (local.generation != g) {
+            local.random = split();
+            local.generation = g;
+        }
+        return local.random;
+    }
+
+    private static synchronized SplittableRandom split() {
+        return root.split();
+    }
+
+    /**
+     * @return a new generator for the named system, seeded from the engine
+     * seed and the name.
+     */
+    public static SplittableRandom create(String system) {
+        return new SplittableRandom(getSeed() * 0x9E3779B97F4A7C15L + system.hashCode());
+    }
+}
@@ -5,16 +5,27 @@ import static core.io.InputHandler.*;
 import java.awt.Color;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import core.App;
+import core.App.LogLevel;
 import core.entity.Camera;
 import core.entity.Entity;
 import core.entity.Light;
 import core.entity.LightType;
+import core.entity.ParticleEmitter;
+import core.io.ChunkFile;
 import core.physic.Material;
+import core.physic.PhysicType;
 import core.scene.AbstractScene;
 import core.scene.Scene;
+import core.scene.WorldStreamer;
+import core.utils.Configuration;
 
 public class DemoScene extends AbstractScene implements Scene {
 
@@ -37,11 +48,23 @@ public class DemoScene extends AbstractScene implements Scene {
         addEntity(player);
         Random rand = new Random(1234);
         for (int i = 0; i < 20; i++) {
-            addEntity(new Entity("enemy_%d".formatted(i))
+            Entity enemy = new Entity("enemy_%d".formatted(i))
+                    .addTag("enemy")
                     .setPosition(rand.nextDouble(world.getWidth()), rand.nextDouble(world.getHeight())).setSize(8, 8)
                     .setEdgeColor(Color.ORANGE).setFillColor(Color.ORANGE.darker())
                     .setMaterial(new Material("enemy", 1.0, 1.0, 1.0))
-                    .setVelocity(-0.2 + rand.nextDouble(0.4), -0.2 + rand.nextDouble(0.4)));
+                    .setVelocity(-0.2 + rand.nextDouble(0.4), -0.2 + rand.nextDouble(0.4));
+            addEntity(enemy);
+            if (app.getScriptSystem() != null) {
+                // patrol: turn back every 1 to 3 seconds.
+                double period = 1000 + 100 * i;
+                app.getScriptSystem().start(enemy, ctx -> {
+                    while (true) {
+                        ctx.waitFor(period);
+                        enemy.setVelocity(-enemy.getVelocity().getX(), -enemy.getVelocity().getY());
+                    }
+                });
+            }
         }
 
         addLight(new Light("light-sun").setLightType(LightType.POINT).setIntensity(0.3).setRadius(120)
@@ -59,7 +82,51 @@ public class DemoScene extends AbstractScene implements Scene {
         addLight(new Light("light-area").setLightType(LightType.AREA).setIntensity(0.3).setPosition(0, 0)
                 .setSize(world.getWidth() / 2, world.getHeight()).setFillColor(new Color(255, 100, 30)));
 
-        setActiveCamera(new Camera("cam01").setTarget(player).setSize(320, 200));
+        addEmitter(new ParticleEmitter("fountain", 4096).setRate(400).setLifetime(2000).setSpeed(0.12)
+                .setDirection(-Math.PI / 2, Math.PI / 6).setParticleMaterial(new Material("water", 0.99, 0.4, 1.0))
+                .setParticleColor(new Color(80, 160, 255)).setPosition(world.getWidth() / 2.0, world.getHeight() - 2));
+
+        Camera camera = new Camera("cam01").setTarget(player).setSize(320, 200);
+        setActiveCamera(camera);
+        String level = app.getConfiguration().get(Configuration.STREAM_FILE);
+        if (!level.isEmpty()) {
+            streamLevel(app, camera, Path.of(level));
+        }
+    }
+
+    /**
+     * Stream the level around the camera, generating it first if the file does
+     * not exist.
+     */
+    private void streamLevel(App app, Camera camera, Path path) {
+        try {
+            if (!Files.exists(path)) {
+                generateLevel(path, 64, 64, 256);
+            }
+            ChunkFile file = ChunkFile.open(path);
+            world.setSize(file.getCols() * file.getChunkSize(), file.getRows() * file.getChunkSize());
+            camera.addBehavior(new WorldStreamer(this, file,
+                    app.getConfiguration().get(Configuration.STREAM_RADIUS),
+                    app.getConfiguration().get(Configuration.STREAM_BUDGET)));
+        } catch (IOException e) {
+            App.log(DemoScene.class, LogLevel.ERROR, "Unable to stream the level %s: %s", path, e.getMessage());
+        }
+    }
+
+    private static void generateLevel(Path path, int cols, int rows, int chunkSize) throws IOException {
+        Random rand = new Random(4321);
+        Material stone = new Material("stone", 1.0, 0.2, 2.0);
+        List<Entity> blocks = new ArrayList<>();
+        for (int i = 0; i < cols * rows * 24; i++) {
+            int gray = 60 + rand.nextInt(80);
+            blocks.add(new Entity()
+                    .setPosition(rand.nextDouble(cols * chunkSize), rand.nextDouble(rows * chunkSize))
+                    .setSize(8 + rand.nextInt(32), 8 + rand.nextInt(16))
+                    .setPhysicType(PhysicType.STATIC).setMaterial(stone)
+                    .setEdgeColor(new Color(gray, gray, gray)).setFillColor(new Color(gray / 2, gray / 2, gray / 2)));
+        }
+        ChunkFile.write(path, 0, 0, chunkSize, cols, rows, blocks);
+        App.log(DemoScene.class, LogLevel.INFO, "Level of %d blocks generated into %s", blocks.size(), path);
     }
 
     @Override
@@ -0,0 +1,102 @@
+package core.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import core.physic.Material;
+import core.physic.PhysicType;
+
+class EntityStoreTest {
+
+    private static Entity body(String name) {
+        return new Entity(name).setActive(true).setPosition(10, 20).setVelocity(1, 2).setSize(8, 4)
+                .setMaterial(Material.RUBBER);
+    }
+
+    @Test
+    void keepsTheStateAcrossAttachAndDetach() {
+        EntityStore store = new EntityStore(4);
+        Entity e = body("e");
+        store.attach(e);
+        assertEquals(1, store.size());
+        assertEquals(10, e.getX());
+        assertEquals(8, e.getWidth());
+
+        e.setPosition(30, 40);
+        e.setSize(2, 3);
+        Archetype a = e.table;
+        assertEquals(30, a.x[e.slot]);
+        assertEquals(3, a.h[e.slot]);
+        assertEquals(Material.RUBBER.friction(), a.friction[e.slot]);
+
+        store.detach(e);
+        assertEquals(0, store.size());
+        assertEquals(0, a.size());
+        assertNull(e.table);
+        assertEquals(30, e.getX());
+        assertEquals(40, e.getY());
+        assertEquals(2, e.getWidth());
+        assertEquals(1, e.getVelocity().getX());
+    }
+
+    @Test
+    void mapsTheEntityStateToComponents() {
+        Entity e = body("e");
+        assertEquals(Archetype.ACTIVE | Archetype.BODY | Archetype.COLLIDER | Archetype.DRAWABLE,
+                EntityStore.componentsOf(e));
+        e.setPhysicType(PhysicType.STATIC);
+        assertEquals(Archetype.ACTIVE | Archetype.COLLIDER | Archetype.DRAWABLE, EntityStore.componentsOf(e));
+        e.setActive(false);
+        assertEquals(Archetype.COLLIDER | Archetype.DRAWABLE, EntityStore.componentsOf(e));
+        e.setPhysicType(PhysicType.NONE);
+        assertEquals(Archetype.DRAWABLE, EntityStore.componentsOf(e));
+    }
+
+    @Test
+    void movesTheEntityToTheArchetypeOfItsComponents() {
+        EntityStore store = new EntityStore(4);
+        EntityStore.Query bodies = store.query(Archetype.ACTIVE | Archetype.BODY, 0);
+        EntityStore.Query statics = store.query(Archetype.ACTIVE | Archetype.COLLIDER, Archetype.BODY);
+        Entity a = body("a");
+        Entity b = body("b");
+        store.attach(a);
+        store.attach(b);
+        assertEquals(2, bodies.count());
+        assertEquals(0, statics.count());
+
+        b.setPosition(50, 60);
+        b.setPhysicType(PhysicType.STATIC);
+        assertEquals(1, bodies.count());
+        assertEquals(1, statics.count());
+        assertSame(b, statics.getArchetypes().get(0).get(0));
+        assertEquals(50, b.getX());
+        assertEquals(60, b.getY());
+        // the slot freed by b is not left behind in its former archetype.
+        assertSame(a, bodies.getArchetypes().get(0).get(0));
+        assertEquals(1, bodies.getArchetypes().get(0).size());
+
+        a.setActive(false);
+        assertEquals(0, bodies.count());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void savesThePreviousPositionsOfTheMovingEntitiesOnly() {
+        EntityStore store = new EntityStore(4);
+        Entity moving = body("moving");
+        Entity fixed = body("fixed").setPhysicType(PhysicType.STATIC);
+        store.attach(moving);
+        store.attach(fixed);
+        moving.clearPreviousPosition();
+        fixed.clearPreviousPosition();
+
+        store.savePreviousPositions();
+        moving.setPosition(15, 20);
+        assertEquals(12.5, moving.getInterpolatedX(0.5));
+        // a static entity is never saved, and is drawn at its current position.
+        assertEquals(10, fixed.getInterpolatedX(0.5));
+    }
+}
@@ -0,0 +1,103 @@
+package core.entity;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import core.physic.Material;
+
+class ParticleEmitterTest {
+
+    private static World world() {
+        return new World("world", 100, 100).setGravity(new Point2D.Double(0, 0));
+    }
+
+    @Test
+    void burstsUpToTheCapacity() {
+        ParticleEmitter emitter = new ParticleEmitter("sparks", 10).setPosition(20, 30);
+        emitter.burst(4);
+        assertEquals(4, emitter.getCount());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(emitter.x[i] >= 20 && emitter.x[i] <= 21);
+            assertTrue(emitter.y[i] >= 30 && emitter.y[i] <= 31);
+        }
+        emitter.burst(20);
+        assertEquals(10, emitter.getCapacity());
+        assertEquals(10, emitter.getCount());
+    }
+
+    @Test
+    void emitsAtTheRate() {
+        ParticleEmitter emitter = new ParticleEmitter("smoke", 100).setRate(50).setLifetime(10_000);
+        World w = world();
+        emitter.integrate(w, 10);
+        assertEquals(0, emitter.getCount());
+        // the fractions of particles are kept from one step to the next.
+        for (int i = 0; i < 9; i++) {
+            emitter.integrate(w, 10);
+        }
+        assertEquals(5, emitter.getCount());
+        emitter.setEmitting(false);
+        emitter.integrate(w, 1000);
+        assertEquals(5, emitter.getCount());
+    }
+
+    @Test
+    void removesTheDeadParticles() {
+        ParticleEmitter emitter = new ParticleEmitter("fire", 10).setLifetime(100).setEmitting(false);
+        emitter.burst(10);
+        World w = world();
+        // the lives are drawn into [lifetime / 2, lifetime].
+        emitter.integrate(w, 49);
+        assertEquals(10, emitter.getCount());
+        emitter.integrate(w, 51);
+        assertEquals(0, emitter.getCount());
+        assertFalse(emitter.intersects(0, 0, 100, 100));
+    }
+
+    @Test
+    void keepsTheParticlesIntoTheWorld() {
+        ParticleEmitter emitter = new ParticleEmitter("rain", 50).setSpeed(5).setLifetime(10_000)
+                .setParticleMaterial(Material.DEFAULT).setEmitting(false).setPosition(50, 50);
+        emitter.burst(50);
+        World w = world();
+        for (int s = 0; s < 20; s++) {
+            emitter.integrate(w, 16);
+        }
+        assertEquals(50, emitter.getCount());
+        for (int i = 0; i < emitter.getCount(); i++) {
+            assertTrue(emitter.x[i] >= 0 && emitter.x[i] <= 100);
+            assertTrue(emitter.y[i] >= 0 && emitter.y[i] <= 100);
+        }
+        assertTrue(emitter.intersects(0, 0, 100, 100));
+        assertFalse(emitter.intersects(200, 200, 10, 10));
+    }
+
+    @Test
+    void spawnsTheSameParticlesForTheSameName() {
+        ParticleEmitter a = new ParticleEmitter("same", 8);
+        ParticleEmitter b = new ParticleEmitter("same", 8);
+        a.burst(8);
+        b.burst(8);
+        assertArrayEquals(a.vx, b.vx);
+        assertArrayEquals(a.life, b.life);
+    }
+
+    @Test
+    void copiesTheLivingParticles() {
+        ParticleEmitter emitter = new ParticleEmitter("dust", 8).setPosition(5, 5);
+        emitter.burst(3);
+        ParticleEmitter copy = emitter.newCopy();
+        copy.copyFrom(emitter);
+        assertEquals(3, copy.getCount());
+        assertArrayEquals(Arrays.copyOf(emitter.x, 3), Arrays.copyOf(copy.x, 3));
+        assertEquals(emitter.getLifetime(), copy.getLifetime());
+        assertEquals(emitter.getParticleColor(), copy.getParticleColor());
+    }
+}
@@ -0,0 +1,98 @@
+package core.gfx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+class RasterTest {
+
+    private static final int BLACK = 0xFF000000, WHITE = 0xFFFFFFFF, RED = 0xFFFF0000;
+
+    private static Raster raster(int w, int h) {
+        Raster r = new Raster(new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB));
+        r.clear(BLACK);
+        return r;
+    }
+
+    private static int count(Raster r, int argb) {
+        int n = 0;
+        for (int p : r.getPixels()) {
+            if (p == argb) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    void blendKeepsTheEndsAndMixesHalfway() {
+        assertEquals(BLACK, Raster.blend(BLACK, WHITE, 0));
+        assertEquals(WHITE, Raster.blend(BLACK, WHITE, 255));
+        assertEquals(RED, Raster.blend(WHITE, RED, 255));
+        int half = Raster.blend(BLACK, WHITE, 128);
+        assertEquals(0xFF, half >>> 24);
+        assertEquals(128, half & 0xFF, 1);
+        assertEquals(half & 0xFF, (half >> 8) & 0xFF);
+        assertEquals(half & 0xFF, (half >> 16) & 0xFF);
+    }
+
+    @Test
+    void fillRectIsClippedToTheImage() {
+        Raster r = raster(10, 10);
+        r.fillRect(-5, -5, 8, 8, RED);
+        assertEquals(9, count(r, RED));
+        assertEquals(RED, r.getPixels()[2 * 10 + 2]);
+        assertEquals(BLACK, r.getPixels()[3 * 10 + 3]);
+    }
+
+    @Test
+    void coordinatesAreRelativeToTheOrigin() {
+        Raster r = raster(10, 10);
+        r.setOrigin(100, 50);
+        r.plot(101, 52, RED);
+        r.plot(99, 52, RED);
+        assertEquals(1, count(r, RED));
+        assertEquals(RED, r.getPixels()[2 * 10 + 1]);
+    }
+
+    @Test
+    void drawRectCoversTheOutlineLikeJava2D() {
+        Raster r = raster(10, 10);
+        r.drawRect(1, 1, 3, 2, RED);
+        // (w + 1) x (h + 1) pixels, minus the inside.
+        assertEquals(4 * 3 - 2, count(r, RED));
+        assertEquals(BLACK, r.getPixels()[2 * 10 + 2]);
+    }
+
+    @Test
+    void drawingStaysInTheClipRectangle() {
+        Raster r = raster(10, 10);
+        r.setClip(5, 0, 5, 10);
+        r.fillRect(0, 0, 10, 1, RED);
+        r.drawLine(0, 5, 9, 9, RED);
+        assertEquals(5 + 5, count(r, RED));
+        r.setClip(0, 0, 10, 10);
+        r.clear(BLACK);
+        assertEquals(0, count(r, RED));
+    }
+
+    @Test
+    void translucentColorsAreBlended() {
+        Raster r = raster(4, 1);
+        r.fillRect(0, 0, 4, 1, 0x80FFFFFF);
+        assertEquals(Raster.blend(BLACK, 0xFFFFFF, 0x80), r.getPixels()[0]);
+    }
+
+    @Test
+    void plotPointsCountsTheDrawnPointsOnly() {
+        Raster r = raster(10, 10);
+        float[] x = {1, 5.5f, -1, 20};
+        float[] y = {1, 5.5f, 1, 1};
+        float[] weight = {1, 1, 1, 1};
+        assertEquals(2, r.plotPoints(x, y, weight, 255, 4, 0xFFFFFF));
+        assertEquals(WHITE, r.getPixels()[5 * 10 + 5]);
+        assertEquals(1, r.plotPoints(x, y, weight, 255, new int[]{3, 0}, 0, 2, 0xFFFFFF));
+    }
+}
@@ -0,0 +1,70 @@
+package core.gfx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import core.scene.Scene;
+import demo.DemoScene;
+
+class RenderPipelineTest {
+
+    private final Scene scene = new DemoScene();
+
+    @Test
+    void consumerTakesTheLatestSnapshot() {
+        RenderPipeline pipeline = new RenderPipeline(3, new Dimension(320, 200), false);
+        assertNull(pipeline.acquire());
+
+        assertTrue(pipeline.publish(scene, 1));
+        assertTrue(pipeline.publish(scene, 2));
+        assertEquals(2, pipeline.acquire().getTime());
+        assertEquals(1, pipeline.getCurrent());
+        assertFalse(pipeline.hasPending());
+        // kept until a newer one is published.
+        assertEquals(2, pipeline.acquire().getTime());
+    }
+
+    @Test
+    void producerSkipsTheCaptureWhenNoSnapshotIsFree() {
+        RenderPipeline pipeline = new RenderPipeline(2, new Dimension(320, 200), false);
+        assertTrue(pipeline.publish(scene, 1));
+        assertTrue(pipeline.publish(scene, 2));
+        assertFalse(pipeline.publish(scene, 3));
+        assertEquals(1, pipeline.getSkipped());
+
+        // taking the latest frees the older one, the current one stays held.
+        assertEquals(2, pipeline.acquire().getTime());
+        assertTrue(pipeline.publish(scene, 4));
+        assertFalse(pipeline.publish(scene, 5));
+        assertEquals(4, pipeline.acquire().getTime());
+    }
+
+    @Test
+    void lockstepDeliversEverySnapshotInOrder() {
+        RenderPipeline pipeline = new RenderPipeline(2, new Dimension(320, 200), true);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+                for (int t = 1; t <= 20; t++) {
+                    pipeline.publish(scene, t);
+                }
+            });
+            for (int t = 1; t <= 20; t++) {
+                while (!pipeline.hasPending()) {
+                    Thread.onSpinWait();
+                }
+                assertEquals(t, pipeline.acquire().getTime());
+            }
+            producer.get();
+        });
+        assertEquals(0, pipeline.getSkipped());
+    }
+}
@@ -0,0 +1,101 @@
+package core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import core.entity.Entity;
+import core.physic.Material;
+import core.physic.PhysicType;
+
+class ChunkFileTest {
+
+    @TempDir
+    Path dir;
+
+    private static Entity entity(String name, double x, double y) {
+        return new Entity(name).setPosition(x, y).setSize(8, 4);
+    }
+
+    @Test
+    void readsBackEachChunkAlone() throws IOException {
+        Path file = dir.resolve("world.chk");
+        Entity a = entity("a", 10, 20).setVelocity(1.5, -2).setMaterial(Material.STEEL)
+                .setPhysicType(PhysicType.STATIC).setFillColor(new Color(0x80112233, true));
+        Entity b = entity("b", 150, 20).setMaterial(Material.RUBBER);
+        Entity c = entity("c", 160, 30).setMaterial(Material.STEEL);
+        Entity outside = entity("outside", 500, 20);
+        ChunkFile.write(file, 0, 0, 100, 2, 1, List.of(a, b, c, outside));
+
+        ChunkFile chunks = ChunkFile.open(file);
+        assertEquals(2, chunks.getCols());
+        assertEquals(1, chunks.getRows());
+        assertEquals(100, chunks.getChunkSize());
+
+        ChunkFile.ChunkData first = chunks.read(0, 0);
+        assertEquals(1, first.count);
+        assertEquals(10, first.x[0]);
+        assertEquals(20, first.y[0]);
+        assertEquals(8, first.w[0]);
+        assertEquals(4, first.h[0]);
+        assertEquals(1.5f, first.vx[0]);
+        assertEquals(-2, first.vy[0]);
+        assertSame(PhysicType.STATIC, first.physicType[0]);
+        assertEquals(Material.STEEL, first.material[0]);
+        assertEquals(0x80112233, first.fillColor[0].getRGB());
+
+        ChunkFile.ChunkData second = chunks.read(1, 0);
+        assertEquals(2, second.count);
+        assertEquals(150, second.x[0]);
+        assertEquals(160, second.x[1]);
+        assertEquals(Material.RUBBER, second.material[0]);
+        assertEquals(Material.STEEL, second.material[1]);
+
+        Entity e = new Entity("loaded");
+        first.apply(0, e);
+        assertEquals(10, e.getX());
+        assertEquals(20, e.getY());
+        assertEquals(Material.STEEL, e.getMaterial());
+        assertSame(PhysicType.STATIC, e.getPhysicType());
+    }
+
+    @Test
+    void mapsPositionsToChunks() throws IOException {
+        Path file = dir.resolve("empty.chk");
+        ChunkFile.write(file, -50, 100, 64, 3, 3, List.of());
+
+        ChunkFile chunks = ChunkFile.open(file);
+        assertEquals(0, chunks.chunkX(-50));
+        assertEquals(1, chunks.chunkX(14));
+        assertEquals(-1, chunks.chunkX(-51));
+        assertEquals(0, chunks.chunkY(163.9));
+        assertEquals(1, chunks.chunkY(164));
+        assertEquals(0, chunks.read(2, 2).count);
+    }
+
+    @Test
+    void keepsTheNullColors() throws IOException {
+        Path file = dir.resolve("colors.chk");
+        ChunkFile.write(file, 0, 0, 100, 1, 1, List.of(entity("a", 10, 10).setEdgeColor(null)));
+
+        assertNull(ChunkFile.open(file).read(0, 0).edgeColor[0]);
+    }
+
+    @Test
+    void rejectsAnotherFile() throws IOException {
+        Path file = dir.resolve("junk.chk");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> ChunkFile.open(file));
+    }
+}
@@ -0,0 +1,101 @@
+package core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class InputTraceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysTheEventsAtTheirTicks() throws IOException {
+        Path file = dir.resolve("input.trc");
+        InputEvent fire = InputEvent.key(InputEvent.Type.KEY_PRESSED, 32, true);
+        InputEvent move = InputEvent.mouse(InputEvent.Type.MOUSE_MOVED, 0, -5, 1200);
+        InputEvent release = InputEvent.key(InputEvent.Type.KEY_RELEASED, 32, false);
+        try (InputTrace.Recorder recorder = new InputTrace.Recorder(file, 60)) {
+            recorder.write(2, fire);
+            recorder.write(2, move);
+            recorder.write(1000, release);
+        }
+
+        try (InputTrace.Player player = new InputTrace.Player(file)) {
+            assertEquals(60, player.getTickRate());
+            List<InputEvent> events = new ArrayList<>();
+            player.read(1, events);
+            assertEquals(List.of(), events);
+            player.read(2, events);
+            assertEquals(List.of(fire, move), events);
+            events.clear();
+            player.read(999, events);
+            assertEquals(List.of(), events);
+            assertFalse(player.isDone());
+            player.read(1000, events);
+            assertEquals(List.of(release), events);
+            assertTrue(player.isDone());
+        }
+    }
+
+    @Test
+    void replaysTheElapsedTimeOfEachTick() throws IOException {
+        Path file = dir.resolve("steps.trc");
+        double fixed = InputTrace.stepMs(60);
+        try (InputTrace.Recorder recorder = new InputTrace.Recorder(file, 60)) {
+            recorder.writeStep(1, fixed);
+            recorder.writeStep(2, 20.5);
+            recorder.writeStep(3, 20.5);
+            recorder.writeStep(4, fixed);
+        }
+        // only the two changes are written, after the 10 bytes header.
+        assertEquals(10 + 2 * (1 + 1 + 8), Files.size(file));
+
+        try (InputTrace.Player player = new InputTrace.Player(file)) {
+            List<InputEvent> events = new ArrayList<>();
+            double[] expected = {fixed, 20.5, 20.5, fixed, fixed};
+            for (int tick = 1; tick <= expected.length; tick++) {
+                player.read(tick, events);
+                assertEquals(expected[tick - 1], player.getStep(), "tick " + tick);
+            }
+            assertTrue(player.isDone());
+            assertEquals(List.of(), events);
+        }
+    }
+
+    @Test
+    void readsTheVersion1Traces() throws IOException {
+        Path file = dir.resolve("v1.trc");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x494E5054);
+            out.writeShort(1);
+            out.writeInt(50);
+            // tick 3 (zigzag 6), KEY_PRESSED, code 65 (zigzag 130, two bytes).
+            out.write(new byte[]{6, 0, (byte) 0x82, 1});
+        }
+        try (InputTrace.Player player = new InputTrace.Player(file)) {
+            List<InputEvent> events = new ArrayList<>();
+            player.read(3, events);
+            assertEquals(List.of(InputEvent.key(InputEvent.Type.KEY_PRESSED, 65, false)), events);
+            assertEquals(InputTrace.stepMs(50), player.getStep());
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = dir.resolve("other.bin");
+        Files.write(file, new byte[]{'P', 'N', 'G', 0, 0, 0, 0, 0, 0, 0});
+        assertThrows(IOException.class, () -> new InputTrace.Player(file));
+    }
+}
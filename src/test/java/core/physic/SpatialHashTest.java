@@ -0,0 +1,160 @@
+package core.physic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import core.entity.Entity;
+
+class SpatialHashTest {
+
+    private static Entity box(String name, double x, double y, double w, double h) {
+        return new Entity(name).setPosition(x, y).setSize(w, h);
+    }
+
+    private static List<String> pairs(SpatialHash hash) {
+        List<String> pairs = new ArrayList<>();
+        hash.forEachPair((a, b) -> pairs.add(a.getName().compareTo(b.getName()) < 0
+                ? a.getName() + "-" + b.getName()
+                : b.getName() + "-" + a.getName()));
+        pairs.sort(null);
+        return pairs;
+    }
+
+    @Test
+    void reportsEachOverlappingPairOnce() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        // a and b both span four cells.
+        Entity a = box("a", 10, 10, 20, 20);
+        Entity b = box("b", 20, 20, 20, 20);
+        Entity c = box("c", 100, 100, 5, 5);
+        hash.beginUpdate();
+        hash.update(a);
+        hash.update(b);
+        hash.update(c);
+        hash.endUpdate();
+
+        assertEquals(List.of("a-b"), pairs(hash));
+    }
+
+    @Test
+    void touchingBoxesDoNotOverlap() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        hash.update(box("a", 0, 0, 16, 16));
+        hash.update(box("b", 16, 0, 16, 16));
+
+        assertEquals(List.of(), pairs(hash));
+    }
+
+    @Test
+    void endUpdateRemovesTheMovingEntitiesNotUpdated() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        Entity a = box("a", 0, 0, 8, 8);
+        Entity b = box("b", 4, 4, 8, 8);
+        hash.beginUpdate();
+        hash.update(a);
+        hash.update(b);
+        hash.endUpdate();
+        hash.beginUpdate();
+        hash.update(a);
+        hash.endUpdate();
+
+        assertEquals(1, hash.size());
+        assertEquals(List.of(), pairs(hash));
+    }
+
+    @Test
+    void fixedEntitiesStayUntilRemovedAndArePairedWithMovingOnesOnly() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        Entity floor = box("floor", 0, 32, 64, 8);
+        Entity wall = box("wall", 0, 0, 8, 40);
+        Entity ball = box("ball", 4, 28, 8, 8);
+        hash.updateFixed(floor);
+        hash.updateFixed(wall);
+        hash.beginUpdate();
+        hash.update(ball);
+        hash.endUpdate();
+        // the fixed ones are not swept by an empty pass.
+        hash.beginUpdate();
+        hash.update(ball);
+        hash.endUpdate();
+
+        assertEquals(3, hash.size());
+        assertEquals(List.of("ball-floor", "ball-wall"), pairs(hash));
+
+        hash.remove(wall);
+        assertEquals(List.of("ball-floor"), pairs(hash));
+    }
+
+    @Test
+    void movedFixedEntityIsFoundAtItsNewPlace() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        Entity floor = box("floor", 0, 0, 10, 10);
+        hash.updateFixed(floor);
+        floor.setPosition(200, 200);
+        hash.updateFixed(floor);
+
+        List<Entity> found = new ArrayList<>();
+        hash.query(0, 0, 20, 20, found::add);
+        assertEquals(List.of(), found);
+        hash.query(190, 190, 20, 20, found::add);
+        assertEquals(List.of(floor), found);
+    }
+
+    @Test
+    void largeEntitiesArePairedWithTheOthers() {
+        SpatialHash hash = new SpatialHash(8, 64);
+        // 26 x 26 cells, kept in the large list.
+        Entity platform = box("platform", 0, 0, 200, 200);
+        Entity a = box("a", 50, 50, 4, 4);
+        Entity b = box("b", 300, 300, 4, 4);
+        hash.update(platform);
+        hash.update(a);
+        hash.update(b);
+        assertEquals(List.of("a-platform"), pairs(hash));
+
+        hash.updateFixed(platform);
+        assertEquals(List.of("a-platform"), pairs(hash));
+    }
+
+    @Test
+    void entitiesRemovedDuringTheIterationAreNotReportedAnymore() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        Entity a = box("a", 0, 0, 10, 10);
+        Entity b = box("b", 5, 5, 10, 10);
+        Entity c = box("c", 8, 8, 10, 10);
+        hash.update(a);
+        hash.update(b);
+        hash.update(c);
+
+        List<String> reported = new ArrayList<>();
+        hash.forEachPair((x, y) -> {
+            reported.add(x.getName() + y.getName());
+            hash.remove(b);
+        });
+        // a-b, a-c and b-c overlap: once b is removed, only a-c is left.
+        for (String pair : reported.subList(1, reported.size())) {
+            assertFalse(pair.contains("b"), pair);
+        }
+        assertTrue(reported.contains("ac") || reported.contains("ca"));
+        assertEquals(2, hash.size());
+    }
+
+    @Test
+    void queryReportsEachEntityOnce() {
+        SpatialHash hash = new SpatialHash(16, 64);
+        Entity a = box("a", 0, 0, 40, 40);
+        Entity b = box("b", 100, 0, 4, 4);
+        hash.update(a);
+        hash.update(b);
+
+        List<Entity> found = new ArrayList<>();
+        hash.query(-10, -10, 60, 60, found::add);
+        assertEquals(List.of(a), found);
+    }
+}
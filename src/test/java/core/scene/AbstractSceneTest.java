@@ -0,0 +1,200 @@
+package core.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import core.entity.Entity;
+import core.entity.Light;
+import core.physic.PhysicType;
+import core.physic.SpatialHash;
+
+class AbstractSceneTest {
+
+    @Test
+    void findsEntitiesAndLightsByNameAndId() {
+        AbstractScene scene = new AbstractScene();
+        Entity player = new Entity("player");
+        Light sun = new Light("sun");
+        scene.addEntity(player);
+        scene.addLight(sun);
+
+        assertSame(player, scene.getEntity("player"));
+        assertSame(sun, scene.getEntity("sun"));
+        assertSame(player, scene.getEntity(player.getId()));
+        assertSame(sun, scene.getEntity(sun.getId()));
+        assertNull(scene.getEntity("nobody"));
+        assertTrue(scene.findEntity("player").isPresent());
+    }
+
+    @Test
+    void followsRenamesAndRemovals() {
+        AbstractScene scene = new AbstractScene();
+        Entity e = new Entity("old");
+        scene.addEntity(e);
+        e.setName("new");
+
+        assertNull(scene.getEntity("old"));
+        assertSame(e, scene.getEntity("new"));
+
+        scene.removeEntity(e);
+        assertNull(scene.getEntity("new"));
+        assertNull(scene.getEntity(e.getId()));
+    }
+
+    @Test
+    void anotherEntityOfTheSameNameTakesThePlaceOfARemovedOne() {
+        AbstractScene scene = new AbstractScene();
+        Entity first = new Entity("enemy");
+        Entity second = new Entity("enemy");
+        scene.addEntity(first);
+        scene.addEntity(second);
+        assertSame(first, scene.getEntity("enemy"));
+
+        scene.removeEntity(first);
+        assertSame(second, scene.getEntity("enemy"));
+    }
+
+    @Test
+    void generatedNamesAreResolvedThroughTheIds() {
+        AbstractScene scene = new AbstractScene();
+        Entity e = new Entity();
+        scene.addEntity(e);
+
+        assertSame(e, scene.getEntity(e.getName()));
+        assertNull(scene.getEntity("entity_x"));
+    }
+
+    @Test
+    void tagViewsFollowTheTagChanges() {
+        AbstractScene scene = new AbstractScene();
+        List<Entity> enemies = scene.getEntitiesByTag("enemy");
+        Entity a = new Entity("a").addTag("enemy");
+        Entity b = new Entity("b");
+        scene.addEntity(a);
+        scene.addEntity(b);
+        b.addTag("enemy");
+        assertEquals(List.of(a, b), enemies);
+
+        a.removeTag("enemy");
+        assertEquals(List.of(b), enemies);
+        scene.removeEntity(b);
+        assertEquals(List.of(), enemies);
+    }
+
+    @Test
+    void releasedEntityLeavesAllTheIndexesAtOnce() {
+        AbstractScene scene = new AbstractScene();
+        List<Entity> enemies = scene.getEntitiesByTag("enemy");
+        Entity e = scene.acquire().setName("boss").addTag("enemy");
+        long id = e.getId();
+
+        scene.release(e);
+
+        assertFalse(e.isActive());
+        assertNull(scene.getEntity("boss"));
+        assertNull(scene.getEntity(id));
+        assertEquals(List.of(), enemies);
+        assertEquals(List.of(), scene.getActiveEntities());
+        // still listed until the next compact().
+        assertEquals(1, scene.getEntities().size());
+        scene.compact();
+        assertEquals(0, scene.getEntities().size());
+    }
+
+    @Test
+    void acquireRecyclesTheReleasedEntitiesPerType() {
+        AbstractScene scene = new AbstractScene();
+        Entity e = scene.acquire().setPosition(10, 20).addTag("enemy");
+        Light l = scene.acquire(Light.class, () -> new Light("spot"));
+        scene.release(e);
+        scene.release(l);
+        scene.compact();
+
+        Entity recycled = scene.acquire();
+        assertSame(e, recycled);
+        assertTrue(recycled.isActive());
+        assertFalse(recycled.isReleased());
+        assertEquals(0, recycled.getX());
+        assertFalse(recycled.hasTag("enemy"));
+        assertSame(recycled, scene.getEntity(recycled.getId()));
+        assertSame(l, scene.acquire(Light.class, () -> new Light("other")));
+        assertEquals(List.of(recycled), scene.getEntities());
+        assertEquals(List.of(l), scene.getLights());
+    }
+
+    @Test
+    void releaseIgnoresTheEntitiesOfOtherScenes() {
+        AbstractScene scene = new AbstractScene();
+        AbstractScene other = new AbstractScene();
+        Entity e = other.acquire();
+
+        scene.release(e);
+
+        assertTrue(e.isActive());
+        assertSame(e, other.getEntity(e.getId()));
+    }
+
+    @Test
+    void partitionsFollowTheActiveAndPhysicTypeChanges() {
+        AbstractScene scene = new AbstractScene();
+        Entity a = new Entity("a");
+        Entity b = new Entity("b").setPhysicType(PhysicType.STATIC);
+        Entity c = new Entity("c");
+        Light l = new Light("l");
+        scene.addEntity(a);
+        scene.addEntity(b);
+        scene.addEntity(c);
+        scene.addLight(l);
+        assertEquals(List.of(a, b, c), scene.getActiveEntities());
+        assertEquals(List.of(b), scene.getStaticEntities());
+        assertEquals(List.of(a, c), scene.getDynamicEntities());
+        assertEquals(List.of(l), scene.getActiveLights());
+
+        long version = scene.getStaticVersion();
+        a.setActive(false);
+        c.setPhysicType(PhysicType.STATIC);
+        assertEquals(List.of(b, c), scene.getActiveEntities());
+        assertEquals(List.of(b, c), scene.getStaticEntities());
+        assertEquals(List.of(), scene.getDynamicEntities());
+        assertTrue(scene.getStaticVersion() > version);
+
+        a.setActive(true);
+        b.setPhysicType(PhysicType.DYNAMIC);
+        assertEquals(List.of(b, c, a), scene.getActiveEntities());
+        assertEquals(List.of(c), scene.getStaticEntities());
+        assertEquals(List.of(a, b), scene.getDynamicEntities());
+    }
+
+    @Test
+    void staticEntitiesAreIndexedOnceAndWhenMoved() {
+        AbstractScene scene = new AbstractScene();
+        SpatialHash index = new SpatialHash(16, 64);
+        scene.setSpatialIndex(index);
+        Entity wall = new Entity("wall").setPosition(0, 0).setSize(8, 8).setPhysicType(PhysicType.STATIC);
+        scene.addEntity(scene.getWorld());
+        scene.addEntity(wall);
+        scene.addEntity(new Entity("ball"));
+        // the World and the dynamic entities are not indexed by the scene.
+        assertEquals(1, index.size());
+
+        wall.setPosition(100, 100);
+        List<Entity> found = new ArrayList<>();
+        index.query(96, 96, 16, 16, found::add);
+        assertEquals(List.of(wall), found);
+
+        wall.setActive(false);
+        assertEquals(0, index.size());
+        wall.setActive(true);
+        assertEquals(1, index.size());
+        scene.release(wall);
+        assertEquals(0, index.size());
+    }
+}
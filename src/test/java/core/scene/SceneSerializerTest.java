@@ -0,0 +1,119 @@
+package core.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import core.entity.Camera;
+import core.entity.Entity;
+import core.entity.Light;
+import core.entity.LightType;
+import core.physic.Material;
+import core.physic.PhysicType;
+import demo.DemoScene;
+
+class SceneSerializerTest {
+
+    private static DemoScene scene() {
+        DemoScene scene = new DemoScene();
+        scene.getWorld().setGravity(new Point2D.Double(0, -0.5));
+        scene.addEntity(scene.getWorld());
+        Entity player = new Entity("player").setPosition(10, 20).setVelocity(1, -2).setSize(16, 24)
+                .setMaterial(Material.RUBBER).setFillColor(Color.RED).addTag("hero");
+        scene.addEntity(player);
+        scene.addEntity(new Entity().setPosition(50, 60).setPhysicType(PhysicType.STATIC)
+                .setMaterial(new Material("Custom", 0.1, 0.2, 0.3)));
+        scene.addEntity(new Entity("sleeping").setActive(false));
+        scene.addLight(new Light("sun").setLightType(LightType.POINT).setRadius(40).setIntensity(0.5)
+                .setPosition(5, 5));
+        scene.setActiveCamera(new Camera("cam").setTarget(player).setSize(320, 200));
+        return scene;
+    }
+
+    private static void assertSameState(Entity expected, Entity actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getX(), actual.getX());
+        assertEquals(expected.getY(), actual.getY());
+        assertEquals(expected.getVelocity(), actual.getVelocity());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getPhysicType(), actual.getPhysicType());
+        assertEquals(expected.getMaterial(), actual.getMaterial());
+        assertEquals(expected.getFillColor(), actual.getFillColor());
+        assertEquals(expected.isActive(), actual.isActive());
+        assertEquals(expected.getTags(), actual.getTags());
+    }
+
+    @Test
+    void restoresTheSceneIntoAnotherOne() {
+        DemoScene source = scene();
+        ByteBuffer snapshot = new SceneSerializer().write(source, null);
+
+        DemoScene target = new DemoScene();
+        target.addEntity(target.getWorld());
+        new SceneSerializer().restore(target, snapshot);
+
+        assertEquals(source.getWorld().getGravity(), target.getWorld().getGravity());
+        assertEquals(source.getEntities().size(), target.getEntities().size());
+        for (Entity e : source.getEntities()) {
+            if (e != source.getWorld()) {
+                assertSameState(e, target.getEntity(e.getId()));
+            }
+        }
+        Light sun = target.getEntity("sun");
+        assertEquals(40, sun.getRadius());
+        assertEquals(0.5, sun.getIntensity());
+        assertEquals(LightType.POINT, sun.getLightType());
+        assertSame(target.getEntity("player"), target.getActiveCamera().getTarget());
+        assertEquals(1, target.getEntitiesByTag("hero").size());
+    }
+
+    @Test
+    void rollsBackTheSameSceneInPlace() {
+        DemoScene scene = scene();
+        SceneSerializer serializer = new SceneSerializer();
+        ByteBuffer snapshot = serializer.write(scene, null);
+        Entity player = scene.getEntity("player");
+
+        player.setPosition(100, 100).setVelocity(0, 0).addTag("hurt");
+        Entity spawned = scene.acquire().setName("bullet");
+        serializer.restore(scene, snapshot);
+
+        assertSame(player, scene.getEntity("player"));
+        assertEquals(10, player.getX());
+        assertEquals(new Point2D.Double(1, -2), player.getVelocity());
+        assertFalse(player.hasTag("hurt"));
+        assertNull(scene.getEntity("bullet"));
+        assertTrue(spawned.isReleased() || !scene.getEntities().contains(spawned));
+    }
+
+    @Test
+    void savesAndLoadsAFile(@TempDir Path dir) throws Exception {
+        DemoScene source = scene();
+        Path file = dir.resolve("scene.bin");
+        new SceneSerializer().save(source, file);
+
+        DemoScene target = new DemoScene();
+        new SceneSerializer().load(target, file);
+
+        assertSameState(source.getEntity("player"), target.getEntity("player"));
+    }
+
+    @Test
+    void rejectsWhatIsNotASnapshot() {
+        ByteBuffer junk = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        assertThrows(IllegalArgumentException.class, () -> new SceneSerializer().restore(new DemoScene(), junk));
+    }
+}
@@ -0,0 +1,105 @@
+package core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Dimension;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import core.App;
+import core.App.LoopMode;
+
+class ConfigurationTest {
+
+    private final App app = new App();
+
+    @Test
+    void usesTheDefaultValuesOfTheKeys() {
+        Configuration config = new Configuration(app);
+
+        assertEquals(60, config.get(Configuration.TICK_RATE));
+        assertEquals(LoopMode.VARIABLE, config.get(Configuration.LOOP_MODE));
+        assertEquals(new Dimension(320, 200), config.get(Configuration.BUFFER_SIZE));
+        assertEquals("", config.get(Configuration.STREAM_FILE));
+    }
+
+    @Test
+    void parsesTheArgumentsByNameOrAlias() {
+        Configuration config = new Configuration(app)
+                .parseArgs(new String[]{"tps=120", "app.gfx.lightmap.scale=0.5", "loop=FIXED"});
+
+        assertEquals(120, config.get(Configuration.TICK_RATE));
+        assertEquals(0.5, config.get(Configuration.LIGHTMAP_SCALE));
+        assertEquals(LoopMode.FIXED, config.get(Configuration.LOOP_MODE));
+    }
+
+    @Test
+    void invalidValuesFallBackToTheDefault() {
+        Configuration config = new Configuration(app).parseArgs(new String[]{"tps=fast"});
+
+        assertEquals(60, config.get(Configuration.TICK_RATE));
+    }
+
+    @Test
+    void stringLookupsReturnTheGivenDefaultUnlessConfigured() {
+        Configuration config = new Configuration(app).parseArgs(new String[]{"app.world.stream.radius=3"});
+
+        assertEquals(3, (int) config.get("app.world.stream.radius", 1));
+        assertEquals(512, (int) config.get("app.world.stream.budget", 512));
+        assertEquals("none", config.get("app.unknown.key", "none"));
+    }
+
+    @Test
+    void dimensionsAreCopiedForEachCaller() {
+        Configuration config = new Configuration(app);
+        Dimension size = config.get(Configuration.BUFFER_SIZE);
+        size.width = 1;
+
+        assertNotSame(size, config.get(Configuration.BUFFER_SIZE));
+        assertEquals(320, config.get(Configuration.BUFFER_SIZE).width);
+    }
+
+    @Test
+    void tracksTheVersionOfTheChangedValues() {
+        Configuration config = new Configuration(app);
+        long version = config.getVersion();
+        config.parseArgs(new String[]{"fps=30"});
+
+        assertTrue(config.getVersion() > version);
+        assertTrue(config.hasChanged(Configuration.FPS, version));
+        assertFalse(config.hasChanged(Configuration.TICK_RATE, version));
+    }
+
+    @Test
+    void reloadsTheReloadableKeysOnlyWhenTheFileChanges() throws Exception {
+        // a file on the test class path, as the configuration is loaded as a resource.
+        Path root = Path.of(ConfigurationTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path file = root.resolve("reload-test.properties");
+        Files.writeString(file, "app.render.fps=60\napp.loop.tick.rate=60\napp.gfx.lightmap.scale=1.0\n");
+        Configuration config = new Configuration(app).load("/reload-test.properties")
+                .parseArgs(new String[]{"app.gfx.lightmap.scale=0.5"});
+        try {
+            config.watch();
+            long version = config.getVersion();
+            Files.writeString(file, "app.render.fps=30\napp.loop.tick.rate=120\napp.gfx.lightmap.scale=2.0\n");
+            for (int i = 0; i < 100 && config.getVersion() == version; i++) {
+                Thread.sleep(50);
+            }
+
+            assertEquals(30, config.get(Configuration.FPS));
+            assertTrue(config.hasChanged(Configuration.FPS, version));
+            // applied at the next start only.
+            assertEquals(60, config.get(Configuration.TICK_RATE));
+            // the command line still overrides the file.
+            assertEquals(0.5, config.get(Configuration.LIGHTMAP_SCALE));
+        } finally {
+            config.dispose();
+            Files.deleteIfExists(file);
+        }
+    }
+}
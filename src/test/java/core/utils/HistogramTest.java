@@ -0,0 +1,70 @@
+package core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+    @Test
+    void keepsTheSmallValuesExact() {
+        Histogram h = new Histogram();
+        for (int v = 1; v <= 10; v++) {
+            h.record(v);
+        }
+        assertEquals(10, h.getCount());
+        assertEquals(5, h.getPercentile(50));
+        assertEquals(9, h.getPercentile(90));
+        assertEquals(10, h.getPercentile(100));
+        assertEquals(1, h.getMin());
+        assertEquals(10, h.getMax());
+        assertEquals(5.5, h.getMean());
+    }
+
+    @Test
+    void knowsTheLargeValuesWithinTheBucketPrecision() {
+        Histogram h = new Histogram();
+        for (long v = 1; v <= 1000; v++) {
+            h.record(v * 1_000_000L);
+        }
+        assertWithin(500_000_000L, h.getPercentile(50));
+        assertWithin(990_000_000L, h.getPercentile(99));
+        assertWithin(1_000_000_000L, h.getPercentile(100));
+        assertEquals(1_000_000_000L, h.getMax());
+    }
+
+    @Test
+    void clampsThePercentilesToTheRecordedRange() {
+        Histogram h = new Histogram();
+        h.record(1_000_003);
+        assertEquals(1_000_003, h.getPercentile(0));
+        assertEquals(1_000_003, h.getPercentile(50));
+        assertEquals(1_000_003, h.getPercentile(100));
+    }
+
+    @Test
+    void recordsTheNegativeValuesAsZero() {
+        Histogram h = new Histogram();
+        h.record(-5);
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getPercentile(50));
+    }
+
+    @Test
+    void forgetsEverythingOnReset() {
+        Histogram h = new Histogram();
+        h.record(42);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(99));
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getMean());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.035, "%d not within 3.5%% of %d".formatted(actual,
+                expected));
+    }
+}
@@ -0,0 +1,67 @@
+package core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProfilerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsTheSpansAndCounters() {
+        Profiler profiler = new Profiler(true);
+        for (int i = 0; i < 3; i++) {
+            profiler.end(Profiler.Span.PHYSIC, profiler.start());
+        }
+        profiler.count(Profiler.Counter.ENTITIES, 120);
+        assertEquals(3, profiler.getHistogram(Profiler.Span.PHYSIC).getCount());
+        assertEquals(0, profiler.getHistogram(Profiler.Span.RENDER).getCount());
+        assertEquals(120, profiler.getCounter(Profiler.Counter.ENTITIES));
+    }
+
+    @Test
+    void ignoresEverythingWhenDisabled() {
+        Profiler profiler = new Profiler(false);
+        assertEquals(0, profiler.start());
+        profiler.end(Profiler.Span.PHYSIC, 0);
+        profiler.count(Profiler.Counter.ENTITIES, 120);
+        profiler.frame();
+        assertEquals(0, profiler.getHistogram(Profiler.Span.PHYSIC).getCount());
+        assertEquals(0, profiler.getCounter(Profiler.Counter.ENTITIES));
+
+        Path file = dir.resolve("profile.csv");
+        profiler.export(file);
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void exportsTheRunAsCsvOrJson() throws IOException {
+        Profiler profiler = new Profiler(true);
+        profiler.count(Profiler.Counter.PARTICLES, 10);
+        profiler.frame();
+        profiler.count(Profiler.Counter.PARTICLES, 30);
+        profiler.frame();
+
+        Path csv = dir.resolve("profile.csv");
+        profiler.export(csv);
+        String text = Files.readString(csv);
+        assertTrue(text.startsWith("type,name,count,mean,p50,p90,p99,p999,max\n"));
+        assertTrue(text.contains("span_ms,frame,1,"));
+        assertTrue(text.contains("counter,particles,2,20.00,,,,,30\n"));
+
+        Path json = dir.resolve("out/profile.json");
+        profiler.export(json);
+        text = Files.readString(json);
+        assertTrue(text.contains("\"frames\": 2,"));
+        assertTrue(text.contains("\"particles\": {\"mean\": 20.00, \"max\": 30}"));
+    }
+}
@@ -0,0 +1,75 @@
+package core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import core.entity.Light;
+
+class RandomServiceTest {
+
+    private long seed;
+
+    @BeforeEach
+    void saveSeed() {
+        seed = RandomService.getSeed();
+    }
+
+    @AfterEach
+    void restoreSeed() {
+        RandomService.setSeed(seed);
+    }
+
+    private static double[] draw(SplittableRandom random) {
+        double[] values = new double[8];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble();
+        }
+        return values;
+    }
+
+    @Test
+    void namedGeneratorsOnlyDependOnTheSeedAndTheName() throws Exception {
+        RandomService.setSeed(42);
+        double[] here = draw(RandomService.create("physic"));
+        double[] there = CompletableFuture.supplyAsync(() -> draw(RandomService.create("physic"))).get();
+
+        assertArrayEquals(here, there);
+        assertNotEquals(here[0], draw(RandomService.create("render"))[0]);
+        RandomService.setSeed(43);
+        assertNotEquals(here[0], draw(RandomService.create("physic"))[0]);
+    }
+
+    @Test
+    void eachThreadHasItsOwnGeneratorRenewedOnReseed() throws Exception {
+        SplittableRandom mine = RandomService.current();
+        assertSame(mine, RandomService.current());
+        assertNotSame(mine, CompletableFuture.supplyAsync(RandomService::current).get());
+
+        RandomService.setSeed(7);
+        assertNotSame(mine, RandomService.current());
+    }
+
+    @Test
+    void lightFlickerIsNotChangedByTheOtherConsumers() {
+        RandomService.setSeed(42);
+        Light a = new Light("a").setIntensity(1.0);
+        Light b = new Light("b").setIntensity(1.0);
+        SplittableRandom expected = RandomService.create("light:a");
+        for (int i = 0; i < 4; i++) {
+            b.update(16);
+            RandomService.current().nextDouble();
+            a.update(16);
+            assertEquals(0.9 + expected.nextDouble() * 0.1, a.getIntensityDraw());
+        }
+    }
+}